@@ -0,0 +1,116 @@
+#!/usr/bin/env bash
+#
+# Measures how the target-info aspect scales with the depth of a dependency graph.
+#
+# Generates a synthetic workspace where each layer has two java_library targets that both export the two targets of
+# the layer below (a chain of diamonds, so the number of export paths to the bottom doubles with every layer), runs the
+# aspect over the top target, and prints the number of reports the run wrote, the size of the top target's report and
+# the wall time of the Bazel run, per depth.
+#
+# Usage: benchmark-target-info-aspect.sh [max-depth] [bazel-binary] [aspect-file]
+#   max-depth    - the deepest graph to measure, depths double from 1. Defaults to 32.
+#   bazel-binary - defaults to `bazel` from the PATH.
+#   aspect-file  - the aspect to measure. Defaults to the plugin's get_target_info.bzl. To compare with an older
+#                  version, extract it first: git show <rev>:buildSrc/bazelleaf/src/main/resources/aspects/get_target_info.bzl
+#
+# Measured with Bazel 8.4.2 (offline, so `java_library` was a Starlark rule with the same attributes, and both aspects
+# got `.to_list()` where they iterate a depset, which Bazel 8 requires). The aspect that flattened the propagated deps
+# into lists, and the one that keeps them in a depset:
+#
+#           list-based aspect                   depset-based aspect
+#   depth   report-bytes dep-records time-ms    report-bytes dep-records time-ms
+#   1       406          3           1599       295          3           1724
+#   2       750          7           666        393          5           698
+#   4       2814         31          722        589          9           756
+#   8       44094        511         929        981          17          1010
+#   16      11403584     131071      3033       1816         33          1474
+#   32      out of memory after 60127ms         3448         65          2217
+#
+# Once the depset-based aspect also reported the targets it visited (a VISITED record per exported target, also kept in
+# a depset), the reports grew linearly with the depth, as the deps did:
+#
+#   depth   report-bytes dep-records time-ms
+#   1       381          3           1607
+#   2       565          5           664
+#   4       933          9           712
+#   8       1669         17          847
+#   16      3236         33          1255
+#   32      6308         65          2143
+#
+# Once the aspect also ran over the deps, so one run reports the whole local dependency graph (a report per target,
+# the `leaf` ones included), instead of one run per level of modules:
+#
+#   depth   reports  report-bytes dep-records time-ms
+#   1       6        381          3           1619
+#   2       10       565          5           807
+#   4       18       933          9           905
+#   8       34       1669         17          1202
+#   16      66       3236         33          1767
+#   32      130      6308         65          2776
+
+set -euo pipefail
+
+readonly MAX_DEPTH="${1:-32}"
+readonly BAZEL="${2:-bazel}"
+readonly ASPECT_FILE="${3:-$(cd "$(dirname "$0")/.." && pwd)/src/main/resources/aspects/get_target_info.bzl}"
+
+readonly WORKSPACE="$(mktemp -d)"
+trap '(cd "${WORKSPACE}" && "${BAZEL}" shutdown >/dev/null 2>&1) || true; rm -rf "${WORKSPACE}"' EXIT
+
+touch "${WORKSPACE}/WORKSPACE"
+mkdir -p "${WORKSPACE}/aspects" "${WORKSPACE}/graph"
+touch "${WORKSPACE}/aspects/BUILD.bazel"
+cp "${ASPECT_FILE}" "${WORKSPACE}/aspects/get_target_info.bzl"
+
+now_ms() {
+    #`date +%N` is not available on macOS.
+    perl -MTime::HiRes=time -e 'printf "%d", time * 1000'
+}
+
+write_graph() {
+    local -r depth="$1"
+    local -r build_file="${WORKSPACE}/graph/BUILD.bazel"
+    : > "${build_file}"
+    for layer in $(seq 0 "${depth}"); do
+        for side in a b; do
+            echo "public class Layer${layer}${side} {}" > "${WORKSPACE}/graph/Layer${layer}${side}.java"
+            local exports=""
+            if [[ "${layer}" -gt 0 ]]; then
+                exports="\":layer$((layer - 1))_a\", \":layer$((layer - 1))_b\""
+            fi
+            cat >> "${build_file}" <<EOF
+java_library(
+    name = "layer${layer}_${side}",
+    srcs = ["Layer${layer}${side}.java"],
+    deps = [":leaf${layer}_${side}"],
+    exports = [${exports}],
+)
+
+java_library(
+    name = "leaf${layer}_${side}",
+    srcs = ["Layer${layer}${side}.java"],
+)
+
+EOF
+        done
+    done
+}
+
+printf "%-8s %-8s %-12s %-12s %s\n" "depth" "reports" "report-bytes" "dep-records" "time-ms"
+cd "${WORKSPACE}"
+depth=1
+while [[ "${depth}" -le "${MAX_DEPTH}" ]]; do
+    write_graph "${depth}"
+    start_ms=$(now_ms)
+    if ! "${BAZEL}" build --output_groups=bazel_leaf_info \
+        --aspects //aspects:get_target_info.bzl%target_info_aspect \
+        "//graph:layer${depth}_a" > "${WORKSPACE}/bazel.log" 2>&1; then
+        cat "${WORKSPACE}/bazel.log" >&2
+        exit 1
+    fi
+    end_ms=$(now_ms)
+    report="$(${BAZEL} info bazel-bin 2>/dev/null)/graph/layer${depth}_a.bazel-leaf-info"
+    reports="$(find "$(dirname "${report}")" -name '*.bazel-leaf-info' | wc -l)"
+    printf "%-8s %-8s %-12s %-12s %s\n" "${depth}" "${reports}" "$(wc -c < "${report}")" "$(grep -c '<DEP:>' "${report}")" "$((end_ms - start_ms))"
+    depth=$((depth * 2))
+done
@@ -0,0 +1,189 @@
+package com.spotify.gradle.bazel;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.spotify.gradle.bazel.utils.BazelPackages;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+/**
+ * A persistent cache of aspect results, stored under the root project's build folder.
+ * <p>
+ * Each target label gets its own cache file, which holds the aspect records reported for it, and the digests of the
+ * inputs that could change these records: the WORKSPACE file, the aspect rule file, the Bazel binary and the BUILD
+ * files (and the `.bzl` files they load) of the target's package, of its local dependencies, and of the local targets
+ * the aspect visited on the way to them (through exports and runtime_deps). An entry is used only
+ * if all these digests are unchanged, so an unchanged workspace is synced without launching Bazel, and a change only
+ * invalidates the labels that depend on the changed file.
+ * <p>
+ * Entries are also kept in the {@link DaemonModelCache}, so a warm daemon does not even need to hash the inputs.
+ */
+class AspectResultsCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AspectResultsCache.class);
+    private static final String MISSING_FILE_DIGEST = "missing";
+
+    private final File mCacheFolder;
+    private final File mWorkspaceRootFolder;
+    private final File mBazelBinary;
+    private final String mAspectRuleFileName;
+    private final DaemonModelCache mDaemonModelCache;
+    private final Map<File, String> mFileDigests = new HashMap<>();
+    private String mGlobalDigest;
+
+    AspectResultsCache(File cacheFolder, File workspaceRootFolder, File bazelBinary, String aspectRuleFileName, DaemonModelCache daemonModelCache) {
+        mCacheFolder = cacheFolder;
+        mWorkspaceRootFolder = workspaceRootFolder;
+        mBazelBinary = bazelBinary;
+        mAspectRuleFileName = aspectRuleFileName;
+        mDaemonModelCache = daemonModelCache;
+    }
+
+    /**
+     * @return the cached aspect records for the given label, or null if there is no valid entry.
+     */
+    @javax.annotation.Nullable
+    List<String> load(String targetLabel) {
+        final List<String> inMemoryRecords = mDaemonModelCache.getTargetRecords(targetLabel);
+        if (inMemoryRecords != null) {
+            return inMemoryRecords;
+        }
+
+        final File cacheFile = getCacheFile(targetLabel);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try {
+            final List<String> lines = Files.readLines(cacheFile, StandardCharsets.UTF_8);
+            //first line is the global digest, then "<file>\t<digest>" lines, an empty line, and the records.
+            if (lines.isEmpty() || !lines.get(0).equals(getGlobalDigest())) {
+                return null;
+            }
+            final Set<File> inputFiles = new TreeSet<>();
+            int lineIndex = 1;
+            for (; lineIndex < lines.size() && !lines.get(lineIndex).isEmpty(); lineIndex++) {
+                final String[] fileDigest = lines.get(lineIndex).split("\t", 2);
+                if (fileDigest.length != 2 || !fileDigest[1].equals(getFileDigest(new File(fileDigest[0])))) {
+                    return null;
+                }
+                inputFiles.add(new File(fileDigest[0]));
+            }
+            if (lineIndex >= lines.size()) {
+                return null;
+            }
+            final List<String> records = new ArrayList<>(lines.subList(lineIndex + 1, lines.size()));
+            mDaemonModelCache.putTargetRecords(targetLabel, records, withGlobalInputFiles(inputFiles));
+            return records;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read aspect cache entry for {}. Error: {}", targetLabel, e.getMessage());
+            return null;
+        }
+    }
+
+    void store(String targetLabel, List<String> aspectRecords) {
+        final Set<File> buildFiles = new TreeSet<>();
+        buildFiles.add(getBuildFile(targetLabel));
+        //the values of the DEP and VISITED records start with a label.
+        aspectRecords.stream()
+                .map(record -> record.substring(record.indexOf(":>") + 2))
+                .map(BazelPackages::getPackagePath)
+                .filter(packagePath -> packagePath != null)
+                .map(packagePath -> BazelPackages.getBuildFile(mWorkspaceRootFolder, packagePath))
+                .forEach(buildFiles::add);
+        final Set<File> inputFiles = new TreeSet<>(buildFiles);
+        buildFiles.forEach(buildFile -> inputFiles.addAll(BazelPackages.getLoadedExtensionFiles(mWorkspaceRootFolder, buildFile)));
+        mDaemonModelCache.putTargetRecords(targetLabel, aspectRecords, withGlobalInputFiles(inputFiles));
+
+        final List<String> lines = new ArrayList<>();
+        lines.add(getGlobalDigest());
+        inputFiles.forEach(inputFile -> lines.add(inputFile.getPath() + '\t' + getFileDigest(inputFile)));
+        lines.add("");
+        lines.addAll(aspectRecords);
+
+        final File cacheFile = getCacheFile(targetLabel);
+        try {
+            Files.createParentDirs(cacheFile);
+            Files.asCharSink(cacheFile, StandardCharsets.UTF_8).writeLines(lines);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write aspect cache entry for {}. Error: {}", targetLabel, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the source folders of the given label, derived from its source files. These are kept in the
+     * {@link DaemonModelCache} only, since deriving them is cheap compared to hashing them into a persistent entry.
+     */
+    Set<File> getSourceFolders(String targetLabel, Collection<File> sourceFiles, Supplier<Set<File>> sourceFoldersSupplier) {
+        return mDaemonModelCache.getSourceFolders(targetLabel, sourceFiles, sourceFoldersSupplier);
+    }
+
+    private File getCacheFile(String targetLabel) {
+        return new File(mCacheFolder, Hashing.sha256().hashString(targetLabel, StandardCharsets.UTF_8).toString());
+    }
+
+    private File getBuildFile(String targetLabel) {
+        final String packagePath = BazelPackages.getPackagePath(targetLabel);
+        if (packagePath == null) {
+            throw new IllegalArgumentException("The label " + targetLabel + " is not a local Bazel target.");
+        }
+        return BazelPackages.getBuildFile(mWorkspaceRootFolder, packagePath);
+    }
+
+    private Set<File> withGlobalInputFiles(Set<File> inputFiles) {
+        final Set<File> allInputFiles = new TreeSet<>(inputFiles);
+        allInputFiles.add(new File(mWorkspaceRootFolder, "WORKSPACE"));
+        allInputFiles.add(new File(mWorkspaceRootFolder, "WORKSPACE.bazel"));
+        allInputFiles.add(mBazelBinary);
+        return allInputFiles;
+    }
+
+    private String getFileDigest(File file) {
+        return mFileDigests.computeIfAbsent(file, fileToHash -> {
+            if (!fileToHash.isFile()) {
+                return MISSING_FILE_DIGEST;
+            }
+            try {
+                return Files.asByteSource(fileToHash).hash(Hashing.sha256()).toString();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to calculate digest for " + fileToHash, e);
+            }
+        });
+    }
+
+    private String getGlobalDigest() {
+        if (mGlobalDigest == null) {
+            final Hasher hasher = Hashing.sha256().newHasher();
+            hasher.putString(getFileDigest(new File(mWorkspaceRootFolder, "WORKSPACE")), StandardCharsets.UTF_8);
+            hasher.putString(getFileDigest(new File(mWorkspaceRootFolder, "WORKSPACE.bazel")), StandardCharsets.UTF_8);
+            //the binary's path, size and timestamp stand for its version; asking Bazel would mean launching it.
+            hasher.putString(mBazelBinary.getAbsolutePath(), StandardCharsets.UTF_8);
+            hasher.putLong(mBazelBinary.length());
+            hasher.putLong(mBazelBinary.lastModified());
+            try (InputStream aspectRule = AspectResultsCache.class.getClassLoader().getResourceAsStream("aspects/" + mAspectRuleFileName)) {
+                hasher.putBytes(ByteStreams.toByteArray(aspectRule));
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to read aspect rule " + mAspectRuleFileName, e);
+            }
+            mGlobalDigest = hasher.hash().toString();
+        }
+
+        return mGlobalDigest;
+    }
+}
@@ -1,69 +1,152 @@
 package com.spotify.gradle.bazel;
 
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
 
 import org.apache.commons.io.IOUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
+/**
+ * Runs an aspect over Bazel targets, and reads back the results the aspect wrote.
+ * <p>
+ * Aspects do not print their results; each aspect writes a `&lt;target-name&gt;.bazel-leaf-info` file into the
+ * `bazel_leaf_info` output group. This file is placed next to the target's outputs in `bazel-bin`, and contains one
+ * record per line. The aspect also writes the files of the local targets a target depends on, so a single run reports
+ * the whole local dependency graph of the given targets.
+ */
 public class AspectRunner {
 
-    // the 'noop' group shouldn't exist and isn't expected to exist.  This should avoid the default output_group execution.
-    private static final String NOOP_OUTPUT_GROUP = "noop";
+    private static final String ASPECT_OUTPUT_GROUP = "bazel_leaf_info";
+    private static final String ASPECT_RESULT_FILE_EXTENSION = ".bazel-leaf-info";
+    //relative to the workspace root, so the aspects are a Bazel package of the workspace.
+    private static final String ASPECTS_FOLDER = "build/bazel_aspects";
+    //all the aspect rules of the plugin, deployed together.
+    private static final List<String> ASPECT_RULE_FILE_NAMES = Collections.singletonList(BazelAspectService.TARGET_INFO_ASPECT);
+    //"//lib3:jar<DEP:>//lib4:jar<FILES:>[]"
+    private static final Pattern LOCAL_DEP_PATTERN = Pattern.compile("^//[^<]+<DEP:>(//[^<]+)<FILES:>.*$");
+
+    private static Map<String, byte[]> sAspectRules;
+    private static String sAspectsPackage;
 
     private final BazelLeafConfig.Decorated mConfig;
-    private final File mAspectsFolder;
     private final BazelExecHelper mBazelExecHelper;
 
     public AspectRunner(BazelLeafConfig.Decorated config, BazelExecHelper bazelExecHelper) {
         mConfig = config;
         mBazelExecHelper = bazelExecHelper;
-        mAspectsFolder = new File("build/bazel_aspects/", mConfig.targetPath.replace("/", "_").replace(":", "_"));
-        if (!mAspectsFolder.exists() && !mAspectsFolder.mkdirs()) {
-            throw new IllegalStateException("Failed to create output folder for aspects at " + mAspectsFolder.getAbsolutePath());
-        }
-
-        try (FileOutputStream bazelBuildFile = new FileOutputStream(new File(mAspectsFolder, "BUILD.bazel"))) {
-            IOUtils.write("", bazelBuildFile, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to create an empty BUILD file for aspects rules!", e);
-        }
     }
 
-    public List<String> getAspectResult(String aspectRuleFileName, String target) {
-        try (InputStream resourceAsStream = BazelLeafPlugin.class.getClassLoader()
-                .getResourceAsStream("aspects/" + aspectRuleFileName)) {
-            final File aspectRuleFile = new File(mAspectsFolder, aspectRuleFileName);
-            try (OutputStream outputStream = new FileOutputStream(aspectRuleFile, false)) {
-                IOUtils.copy(resourceAsStream, outputStream);
-            }
+    /**
+     * Runs the given aspect over all the given target labels in a single Bazel invocation.
+     *
+     * @return the records the aspect wrote for the given targets, and for the local targets they depend on.
+     */
+    public List<String> getAspectResult(String aspectRuleFileName, String aspectName, List<String> targetLabels) {
+        try {
+            final String aspectsPackage = deployAspects(mConfig.workspaceRootFolder);
 
-            String outputGroupArg = "--output_groups=" + NOOP_OUTPUT_GROUP;
             BazelExecHelper.BazelExec builder = mBazelExecHelper
-                    .createBazelRun(false, mConfig, target, "build", outputGroupArg, "--aspects",
-                            aspectRuleFile + "%print_aspect");
-            //yes... Aspect output is on the error channel.
-            return cleanUp(builder.start().getExecutionOutput(), aspectRuleFileName);
+                    .createBazelRun(false, mConfig, targetLabels, "build", "--output_groups=" + ASPECT_OUTPUT_GROUP, "--aspects",
+                            "//" + aspectsPackage + ':' + aspectRuleFileName + '%' + aspectName);
+            builder.start();
+
+            final List<String> records = new ArrayList<>();
+            final List<String> toRead = new ArrayList<>(targetLabels);
+            final Set<String> readLabels = new HashSet<>(targetLabels);
+            for (int readIndex = 0; readIndex < toRead.size(); readIndex++) {
+                final List<String> targetRecords = readAspectResultFile(toRead.get(readIndex));
+                records.addAll(targetRecords);
+                targetRecords.stream()
+                        .map(LOCAL_DEP_PATTERN::matcher)
+                        .filter(Matcher::matches)
+                        .map(matcher -> matcher.group(1))
+                        .filter(readLabels::add)
+                        .forEach(toRead::add);
+            }
+            return records;
         } catch (InterruptedException | IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static List<String> cleanUp(List<String> outputLines, String aspectRuleFileName) {
-        final Pattern pattern = Pattern.compile("^.*" + aspectRuleFileName + ":\\d+:\\d+:\\s+(.+)\\s*$");
-        return outputLines.stream()
-                .map(pattern::matcher)
-                .filter(Matcher::matches)
-                .map(matcher -> matcher.group(1))
-                .collect(Collectors.toList());
+    /**
+     * Makes sure the plugin's aspect rules are in the workspace.
+     * <p>
+     * The rules are placed in a package that is named after their content hash, and are written only if that package
+     * is missing. So, as long as the plugin does not change, Bazel sees the same, unmodified, package on every run,
+     * and keeps it loaded (along with the analysis that depends on it).
+     *
+     * @return the package's path, relative to the workspace root.
+     */
+    static synchronized String deployAspects(File workspaceRootFolder) throws IOException {
+        if (sAspectsPackage == null) {
+            final Map<String, byte[]> aspectRules = new LinkedHashMap<>();
+            final Hasher hasher = Hashing.sha256().newHasher();
+            for (String aspectRuleFileName : ASPECT_RULE_FILE_NAMES) {
+                try (InputStream aspectRule = AspectRunner.class.getClassLoader().getResourceAsStream("aspects/" + aspectRuleFileName)) {
+                    final byte[] content = IOUtils.toByteArray(aspectRule);
+                    aspectRules.put(aspectRuleFileName, content);
+                    hasher.putString(aspectRuleFileName, StandardCharsets.UTF_8).putBytes(content);
+                }
+            }
+            sAspectRules = aspectRules;
+            sAspectsPackage = ASPECTS_FOLDER + "/" + hasher.hash().toString().substring(0, 16);
+        }
+
+        final File aspectsFolder = new File(workspaceRootFolder, sAspectsPackage);
+        //the BUILD file is written last, so its existence means that all the rules were deployed.
+        final File buildFile = new File(aspectsFolder, "BUILD.bazel");
+        if (!buildFile.isFile()) {
+            Files.createDirectories(aspectsFolder.toPath());
+            for (Map.Entry<String, byte[]> aspectRule : sAspectRules.entrySet()) {
+                writeAtomically(new File(aspectsFolder, aspectRule.getKey()), aspectRule.getValue());
+            }
+            writeAtomically(buildFile, new byte[0]);
+        }
+        return sAspectsPackage;
+    }
+
+    /*
+     * Another module, or another daemon of the same workspace, may be running Bazel over the same file. So, the file is
+     * written next to its target, and then moved over it, so Bazel never reads a partially written file.
+     */
+    static void writeAtomically(File file, byte[] content) throws IOException {
+        final Path tempFile = Files.createTempFile(file.getParentFile().toPath(), file.getName(), ".tmp");
+        try {
+            Files.write(tempFile, content);
+            Files.move(tempFile, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private List<String> readAspectResultFile(String targetLabel) throws IOException {
+        //"//andlib/innerandlib:inneraar" -> bazel-bin/andlib/innerandlib/inneraar.bazel-leaf-info
+        final String packagePath = targetLabel.substring(2, targetLabel.indexOf(':'));
+        final String targetName = targetLabel.substring(targetLabel.indexOf(':') + 1);
+        final File resultFile = new File(new File(mConfig.buildOutputDir, "bin/" + packagePath), targetName + ASPECT_RESULT_FILE_EXTENSION);
+        if (!resultFile.isFile()) {
+            //the aspect did not run on this target (for example, it is not a rule).
+            return Collections.emptyList();
+        }
+
+        return Files.readAllLines(resultFile.toPath(), StandardCharsets.UTF_8);
     }
 }
@@ -1,5 +1,8 @@
 package com.spotify.gradle.bazel;
 
+import com.spotify.gradle.bazel.utils.BazelPackages;
+import com.spotify.gradle.bazel.utils.RootScope;
+
 import org.gradle.api.Project;
 
 import java.io.BufferedReader;
@@ -7,31 +10,68 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service to encapsulate the Aspect calls to Bazel.
+ * <p>
+ * A single instance is shared by all the Bazel modules in the build (see {@link #obtain(Project, Supplier)}).
+ * Each module registers its targets with {@link #registerTargets(Collection)}, and the first query runs the aspect
+ * once over all the registered targets - one Bazel invocation for the whole workspace, instead of one per module.
+ * The aspect also reports the local targets those depend on, which are then known without another run.
  */
 public class BazelAspectService {
 
-    public static BazelAspectService create(Project rootProject, AspectRunner aspectRunner) {
-        return new BazelAspectService(rootProject, aspectRunner);
+    public static BazelAspectService create(Project rootProject, AspectRunner aspectRunner, AspectResultsCache resultsCache) {
+        return new BazelAspectService(rootProject, aspectRunner, resultsCache);
+    }
+
+    /**
+     * Returns the build's shared service, creating it with the given factory if this is the first module asking for it.
+     */
+    public static BazelAspectService obtain(Project project, Supplier<BazelAspectService> factory) {
+        return RootScope.get(project, BazelAspectService.class, factory);
     }
 
+    static final String TARGET_INFO_ASPECT = "get_target_info.bzl";
+    private static final String TARGET_INFO_ASPECT_NAME = "target_info_aspect";
+    //"//lib2:jar<KIND:>java_library"
+    private static final Pattern TARGET_INFO_PATTERN = Pattern.compile("^(//[^<]+)<(KIND|OUT|SRC|RES|DEP|VISITED):>(.*)$");
+
     //taken from https://github.com/bazelbuild/intellij/blob/master/aspect/tools/src/com/google/idea/blaze/aspect/PackageParser.java#L163
     private static final Pattern PACKAGE_PATTERN = Pattern.compile("^\\s*package\\s+([\\w\\.]+);$");
     private final Project mRootProject;
     private final AspectRunner mRunner;
+    private final AspectResultsCache mResultsCache;
+    private final Set<String> mPendingTargetLabels = new LinkedHashSet<>();
+    private final Map<String, TargetInfo> mTargetInfos = new HashMap<>();
 
-    BazelAspectService(Project rootProject, AspectRunner aspectRunner) {
+    BazelAspectService(Project rootProject, AspectRunner aspectRunner, AspectResultsCache resultsCache) {
         mRootProject = rootProject;
         mRunner = aspectRunner;
+        mResultsCache = resultsCache;
+    }
+
+    /**
+     * Adds the given target labels to the next batched aspect run.
+     */
+    public synchronized void registerTargets(Collection<String> targetLabels) {
+        targetLabels.stream()
+                .filter(targetLabel -> !mTargetInfos.containsKey(targetLabel))
+                .forEach(mPendingTargetLabels::add);
     }
 
     @javax.annotation.Nullable
@@ -50,14 +90,88 @@ public class BazelAspectService {
         return null;
     }
 
-    public Deps getAllDeps(String targetName) {
+    private synchronized TargetInfo getTargetInfo(String targetLabel) {
+        if (!mTargetInfos.containsKey(targetLabel)) {
+            mPendingTargetLabels.add(targetLabel);
+            final List<String> targetLabels = new ArrayList<>();
+            for (String pendingTargetLabel : mPendingTargetLabels) {
+                final List<String> cachedRecords = mResultsCache.load(pendingTargetLabel);
+                if (cachedRecords == null) {
+                    targetLabels.add(pendingTargetLabel);
+                } else {
+                    mTargetInfos.put(pendingTargetLabel, parseTargetInfos(cachedRecords).getOrDefault(pendingTargetLabel, TargetInfo.EMPTY));
+                }
+            }
+            mPendingTargetLabels.clear();
+
+            //only the targets that were not found in the cache are sent to Bazel
+            if (!targetLabels.isEmpty()) {
+                //the aspect also reports the local targets these depend on, so requiring their modules later costs no
+                //other aspect run.
+                final Map<String, TargetInfo> reportedTargetInfos =
+                        parseTargetInfos(mRunner.getAspectResult(TARGET_INFO_ASPECT, TARGET_INFO_ASPECT_NAME, targetLabels));
+                mTargetInfos.putAll(reportedTargetInfos);
+                final Set<String> storedLabels = new LinkedHashSet<>(targetLabels);
+                storedLabels.addAll(reportedTargetInfos.keySet());
+                for (String label : storedLabels) {
+                    //marking targets the aspect did not report on, so we will not query them again.
+                    mTargetInfos.putIfAbsent(label, TargetInfo.EMPTY);
+                    mResultsCache.store(label, mTargetInfos.get(label).toAspectRecords(label));
+                }
+            }
+        }
+
+        return mTargetInfos.get(targetLabel);
+    }
+
+    static Map<String, TargetInfo> parseTargetInfos(List<String> aspectOutput) {
+        final Map<String, TargetInfo> targetInfos = new HashMap<>();
+        for (String aspectLine : aspectOutput) {
+            final Matcher matcher = TARGET_INFO_PATTERN.matcher(aspectLine);
+            if (!matcher.matches()) {
+                throw new IllegalStateException("the aspect output '" + aspectLine + "' does not match any known annotations.");
+            }
+            final TargetInfo targetInfo = targetInfos.computeIfAbsent(matcher.group(1), label -> new TargetInfo());
+            final String value = matcher.group(3);
+            switch (matcher.group(2)) {
+                case "KIND":
+                    targetInfo.kind = value;
+                    break;
+                case "OUT":
+                    targetInfo.outputs.add(value);
+                    break;
+                case "SRC":
+                    targetInfo.sourceFiles.add(value);
+                    break;
+                case "RES":
+                    targetInfo.resourceFiles.add(value);
+                    break;
+                case "VISITED":
+                    targetInfo.visitedLabels.add(value);
+                    break;
+                default:
+                    targetInfo.deps.add(value);
+            }
+        }
+        return targetInfos;
+    }
+
+    public Optional<String> getRuleKind(String targetLabel) {
+        return Optional.ofNullable(getTargetInfo(targetLabel).kind);
+    }
+
+    public List<String> getRuleOutputs(String targetLabel) {
+        return Collections.unmodifiableList(getTargetInfo(targetLabel).outputs);
+    }
+
+    public Deps getAllDeps(String targetLabel) {
         //"//andlib/innerandlib:inneraar<FILES:>[<generated file andlib/innerandlib/inneraar.srcjar>"
         final Pattern localModulesPattern = Pattern.compile("^(//.+)<FILES:>.*$");
         //"//third_party:com_google_code_findbugs__findbugs-annotations__3_0_1<FILES:>[<source file external/com_google_code_findbugs__findbugs_annotations__3_0_1/file/findbugs-annotations-3.0.1.jar>]"
         final Pattern remoteWorkspaceModulesPattern = Pattern.compile("^//third_party:(.*)<FILES:>\\[(.*)]$");
         //"[<source file external/com_google_code_findbugs__findbugs_annotations__3_0_1/file/findbugs-annotations-3.0.1.jar>, <generated file andlib/innerandlib/inneraar_resources-src.jar>]"
         final Pattern generatedFilesPattern = Pattern.compile("<.*\\s+file\\s+(.+)>");
-        return mRunner.getAspectResult("get_deps.bzl", targetName).stream()
+        return getTargetInfo(targetLabel).deps.stream()
                 .collect(Deps::new, (deps, bazelDepAnnotation) -> {
                     final Matcher localModuleMatcher = localModulesPattern.matcher(bazelDepAnnotation);
                     final Matcher remoteWorkspaceMatcher = remoteWorkspaceModulesPattern.matcher(bazelDepAnnotation);
@@ -82,13 +196,119 @@ public class BazelAspectService {
                 });
     }
 
-    public Set<File> getSourceFolders(String targetName) {
-        final Map<File, String> packageByFolder = new HashMap<>();
+    /**
+     * @return the local targets the given target depends on, directly or through other local targets. Only targets
+     * the service knows about (queried, or registered for the next aspect run) are followed, so this never queries a
+     * target no module asked for.
+     */
+    public synchronized Set<String> getTransitiveModuleDeps(String targetLabel) {
+        return collectModuleDeps(targetLabel, label -> label.equals(targetLabel) || isKnown(label));
+    }
 
-        return mRunner.getAspectResult("get_source_files.bzl", targetName).stream()
+    /**
+     * @return the local targets the given target depends on, directly or through other local targets, as far as the
+     * aspect runs so far reported them. Unlike {@link #getTransitiveModuleDeps(String)}, this never runs the aspect.
+     */
+    public synchronized Set<String> getReportedModuleDeps(String targetLabel) {
+        return collectModuleDeps(targetLabel, mTargetInfos::containsKey);
+    }
+
+    /*
+     * Walks the module deps, following only the targets the given predicate accepts.
+     */
+    private Set<String> collectModuleDeps(String targetLabel, Predicate<String> followed) {
+        final Set<String> transitiveDeps = new LinkedHashSet<>();
+        final List<String> toVisit = new ArrayList<>();
+        toVisit.add(targetLabel);
+        while (!toVisit.isEmpty()) {
+            final String visited = toVisit.remove(toVisit.size() - 1);
+            if (followed.test(visited)) {
+                getAllDeps(visited).moduleDeps.stream()
+                        .map(moduleDep -> moduleDep.path)
+                        .filter(transitiveDeps::add)
+                        .forEach(toVisit::add);
+            }
+        }
+        return transitiveDeps;
+    }
+
+    /**
+     * @return the workspace files a Bazel build of the given target reads: the sources and resources of the target,
+     * and of the local targets it depends on, with their BUILD files and the `.bzl` files those load. Or null, if the
+     * target depends on a local target the service knows nothing about, so its files can not be listed.
+     */
+    @javax.annotation.Nullable
+    public synchronized Set<File> getBuildInputFiles(String targetLabel) {
+        final File workspaceRootFolder = mRootProject.getProjectDir();
+        final Set<File> inputFiles = new LinkedHashSet<>();
+        for (String label : getBuildTargetLabels(targetLabel)) {
+            final TargetInfo targetInfo = label.equals(targetLabel) || isKnown(label) ? getTargetInfo(label) : TargetInfo.EMPTY;
+            final String packagePath = BazelPackages.getPackagePath(label);
+            if (targetInfo == TargetInfo.EMPTY || packagePath == null) {
+                return null;
+            }
+
+            Stream.concat(targetInfo.sourceFiles.stream(), targetInfo.resourceFiles.stream())
+                    //generated, and external, files are not part of the workspace.
+                    .filter(path -> !path.startsWith("bazel-out/") && !path.startsWith("external/"))
+                    .map(path -> new File(workspaceRootFolder, path))
+                    .forEach(inputFiles::add);
+            final File buildFile = BazelPackages.getBuildFile(workspaceRootFolder, packagePath);
+            inputFiles.add(buildFile);
+            inputFiles.addAll(BazelPackages.getLoadedExtensionFiles(workspaceRootFolder, buildFile));
+        }
+        return inputFiles;
+    }
+
+    /**
+     * @return the package folders of the given target, and of the local targets it depends on. Unlike the files of
+     * {@link #getBuildInputFiles(String)}, these also hold the files that a glob of the package would add when they are
+     * created. Or null, if the target depends on a local target the service knows nothing about.
+     */
+    @javax.annotation.Nullable
+    public synchronized Set<File> getBuildInputFolders(String targetLabel) {
+        final Set<File> inputFolders = new LinkedHashSet<>();
+        for (String label : getBuildTargetLabels(targetLabel)) {
+            final String packagePath = BazelPackages.getPackagePath(label);
+            if (!(label.equals(targetLabel) || isKnown(label)) || packagePath == null) {
+                return null;
+            }
+            inputFolders.add(new File(mRootProject.getProjectDir(), packagePath));
+        }
+        return inputFolders;
+    }
+
+    /*
+     * A target that was queried, or that was registered for the next (batched) aspect run.
+     */
+    private boolean isKnown(String targetLabel) {
+        return mTargetInfos.containsKey(targetLabel) || mPendingTargetLabels.contains(targetLabel);
+    }
+
+    private Set<String> getBuildTargetLabels(String targetLabel) {
+        final Set<String> targetLabels = new LinkedHashSet<>();
+        targetLabels.add(targetLabel);
+        targetLabels.addAll(getTransitiveModuleDeps(targetLabel));
+        return targetLabels;
+    }
+
+    /**
+     * @return the source roots of the target's source files. Deriving them reads the package declaration of every source
+     * file, so they are derived again only if the source files changed (see AspectResultsCache#getSourceFolders).
+     */
+    public Set<File> getSourceFolders(String targetLabel) {
+        final List<File> sourceFiles = getTargetInfo(targetLabel).sourceFiles.stream()
                 .map(File::new)
                 //we need the root-project since the WORKSPACE file is there.
                 .map(mRootProject::file)
+                .collect(Collectors.toList());
+        return mResultsCache.getSourceFolders(targetLabel, sourceFiles, () -> deriveSourceFolders(sourceFiles));
+    }
+
+    private static Set<File> deriveSourceFolders(List<File> sourceFiles) {
+        final Map<File, String> packageByFolder = new HashMap<>();
+
+        return sourceFiles.stream()
                 .map(sourceFile -> {
                     File parent = sourceFile.getParentFile();
                     String packageInFolder = packageByFolder
@@ -102,6 +322,31 @@ public class BazelAspectService {
                 .collect(Collectors.toSet());
     }
 
+    static class TargetInfo {
+        static final TargetInfo EMPTY = new TargetInfo();
+
+        String kind;
+        final List<String> outputs = new ArrayList<>();
+        final List<String> sourceFiles = new ArrayList<>();
+        final List<String> resourceFiles = new ArrayList<>();
+        final List<String> deps = new ArrayList<>();
+        //the targets the aspect visited through exports and runtime_deps.
+        final List<String> visitedLabels = new ArrayList<>();
+
+        List<String> toAspectRecords(String targetLabel) {
+            final List<String> records = new ArrayList<>();
+            if (kind != null) {
+                records.add(targetLabel + "<KIND:>" + kind);
+            }
+            outputs.forEach(output -> records.add(targetLabel + "<OUT:>" + output));
+            sourceFiles.forEach(sourceFile -> records.add(targetLabel + "<SRC:>" + sourceFile));
+            resourceFiles.forEach(resourceFile -> records.add(targetLabel + "<RES:>" + resourceFile));
+            deps.forEach(dep -> records.add(targetLabel + "<DEP:>" + dep));
+            visitedLabels.forEach(visitedLabel -> records.add(targetLabel + "<VISITED:>" + visitedLabel));
+            return records;
+        }
+    }
+
     public static class Deps {
         public final List<LocalBazelTarget> moduleDeps = new ArrayList<>();
         public final List<ExternalTarget> remoteWorkspaceDeps = new ArrayList<>();
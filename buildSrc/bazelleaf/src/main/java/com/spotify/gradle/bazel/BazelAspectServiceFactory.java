@@ -4,7 +4,7 @@ import org.gradle.api.Project;
 
 public class BazelAspectServiceFactory {
 
-    public BazelAspectService create(Project rootProject, AspectRunner aspectRunner) {
-        return new BazelAspectService(rootProject, aspectRunner);
+    public BazelAspectService create(Project rootProject, AspectRunner aspectRunner, AspectResultsCache resultsCache) {
+        return new BazelAspectService(rootProject, aspectRunner, resultsCache);
     }
 }
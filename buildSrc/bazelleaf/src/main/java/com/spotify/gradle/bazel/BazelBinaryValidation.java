@@ -0,0 +1,81 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.bazel.utils.BazelBinaryStamp;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Validates the Bazel binary, without blocking the configuration whenever possible.
+ * <p>
+ * A binary that matches its {@link BazelBinaryStamp} is not probed at all. A binary that was never stamped is probed
+ * right away, since nothing is known about it. A binary that changed since it was stamped is probed in the background,
+ * and the result is only awaited, by {@link #await()}, before Bazel is first used.
+ */
+class BazelBinaryValidation {
+
+    private final String mBazelBinPath;
+    private final CompletableFuture<Boolean> mResult;
+
+    private BazelBinaryValidation(String bazelBinPath, CompletableFuture<Boolean> result) {
+        mBazelBinPath = bazelBinPath;
+        mResult = result;
+    }
+
+    static BazelBinaryValidation start(String bazelBinPath, BooleanSupplier validityCheck) {
+        return start(bazelBinPath, new BazelBinaryStamp(new File(bazelBinPath)), validityCheck);
+    }
+
+    static BazelBinaryValidation start(String bazelBinPath, BazelBinaryStamp stamp, BooleanSupplier validityCheck) {
+        if (!stamp.exists()) {
+            return new BazelBinaryValidation(bazelBinPath, CompletableFuture.completedFuture(probe(stamp, validityCheck)));
+        } else if (stamp.isUpToDate()) {
+            return new BazelBinaryValidation(bazelBinPath, CompletableFuture.completedFuture(true));
+        } else {
+            final CompletableFuture<Boolean> result = new CompletableFuture<>();
+            final Thread validationThread = new Thread(() -> {
+                try {
+                    result.complete(probe(stamp, validityCheck));
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                }
+            }, "bazel-leaf-binary-validation");
+            validationThread.setDaemon(true);
+            validationThread.start();
+            return new BazelBinaryValidation(bazelBinPath, result);
+        }
+    }
+
+    /**
+     * A validation for a build that does not own the binary (it was validated by whoever injected the download task).
+     */
+    static BazelBinaryValidation alreadyValid(String bazelBinPath) {
+        return new BazelBinaryValidation(bazelBinPath, CompletableFuture.completedFuture(true));
+    }
+
+    private static boolean probe(BazelBinaryStamp stamp, BooleanSupplier validityCheck) {
+        if (validityCheck.getAsBoolean()) {
+            stamp.write();
+            return true;
+        } else {
+            stamp.delete();
+            return false;
+        }
+    }
+
+    boolean isDone() {
+        return mResult.isDone();
+    }
+
+    /**
+     * Blocks until the binary was validated.
+     *
+     * @throws IllegalStateException if the binary is invalid.
+     */
+    void await() {
+        if (!mResult.join()) {
+            throw new IllegalStateException(String.format("Bazel binary at %s is invalid, and was unable to download a valid binary.", mBazelBinPath));
+        }
+    }
+}
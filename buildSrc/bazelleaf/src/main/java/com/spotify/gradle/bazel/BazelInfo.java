@@ -0,0 +1,120 @@
+package com.spotify.gradle.bazel;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import com.spotify.gradle.bazel.utils.BazelExecHelper;
+import com.spotify.gradle.bazel.utils.RootScope;
+
+import org.gradle.api.Project;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * The parts of `bazel info` that the plugin uses.
+ * <p>
+ * These values do not change within a build, so they are computed once per root project and shared by all the
+ * modules. They are also persisted under the root project's build folder, keyed by the workspace path, the Bazel binary
+ * and the startup options, so a build with an unchanged setup does not launch Bazel just to read them.
+ */
+public final class BazelInfo {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BazelInfo.class);
+    static final String BAZEL_BIN_KEY = "bazel-bin";
+    static final String OUTPUT_BASE_KEY = "output_base";
+    static final String RELEASE_KEY = "release";
+    static final List<String> INFO_KEYS = Arrays.asList(BAZEL_BIN_KEY, OUTPUT_BASE_KEY, RELEASE_KEY);
+    private static final String CACHE_KEY = "bazel-leaf.cache-key";
+
+    public final File bazelBin;
+    public final File outputBase;
+    /**
+     * The version of the Bazel binary. For example, `release 0.11.1`.
+     */
+    public final String release;
+
+    BazelInfo(File bazelBin, File outputBase, String release) {
+        this.bazelBin = bazelBin;
+        this.outputBase = outputBase;
+        this.release = release;
+    }
+
+    /**
+     * Returns the build's shared {@link BazelInfo}, querying Bazel only if it was not computed in this daemon, and
+     * was not persisted by an earlier build with the same setup.
+     */
+    static BazelInfo obtain(Project project, BazelLeafConfig.Decorated config, BazelExecHelper bazelExecHelper) {
+        final File persistedInfoFile = new File(project.getRootProject().getBuildDir(), "bazel-leaf/bazel-info.properties");
+        return RootScope.get(project, BazelInfo.class, () -> {
+            final String cacheKey = getCacheKey(config, bazelExecHelper.getStartupOptions());
+            return DaemonModelCache.forWorkspace(config.workspaceRootFolder)
+                    .getBazelInfo(cacheKey, () -> loadOrQuery(persistedInfoFile, cacheKey, config, bazelExecHelper));
+        });
+    }
+
+    static BazelInfo fromProperties(Properties properties) {
+        INFO_KEYS.forEach(key -> {
+            if (properties.getProperty(key) == null) {
+                throw new IllegalStateException("bazel info did not report '" + key + "'.");
+            }
+        });
+        return new BazelInfo(new File(properties.getProperty(BAZEL_BIN_KEY)), new File(properties.getProperty(OUTPUT_BASE_KEY)),
+                properties.getProperty(RELEASE_KEY));
+    }
+
+    static String getCacheKey(BazelLeafConfig.Decorated config, List<String> startupOptions) {
+        final File bazelBinary = new File(config.bazelBin);
+        final Hasher hasher = Hashing.sha256().newHasher();
+        //an info that was persisted with other keys, is queried again.
+        INFO_KEYS.forEach(key -> hasher.putString(key, StandardCharsets.UTF_8).putChar('\0'));
+        hasher.putString(config.workspaceRootFolder.getAbsolutePath(), StandardCharsets.UTF_8);
+        //the binary's path, size and timestamp stand for its version; asking Bazel would mean launching it.
+        hasher.putString(bazelBinary.getAbsolutePath(), StandardCharsets.UTF_8);
+        hasher.putLong(bazelBinary.length());
+        hasher.putLong(bazelBinary.lastModified());
+        startupOptions.forEach(option -> hasher.putString(option, StandardCharsets.UTF_8).putChar('\0'));
+        //build flags, like `-c opt`, change the reported output paths.
+        config.buildFlags.forEach(flag -> hasher.putString(flag, StandardCharsets.UTF_8).putChar('\0'));
+        return hasher.hash().toString();
+    }
+
+    static BazelInfo loadOrQuery(File persistedInfoFile, String cacheKey, BazelLeafConfig.Decorated config, BazelExecHelper bazelExecHelper) {
+        if (persistedInfoFile.isFile()) {
+            try (Reader reader = Files.newReader(persistedInfoFile, StandardCharsets.UTF_8)) {
+                final Properties persisted = new Properties();
+                persisted.load(reader);
+                if (cacheKey.equals(persisted.getProperty(CACHE_KEY))) {
+                    return fromProperties(persisted);
+                }
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.warn("Failed to read persisted bazel info from {}. Error: {}", persistedInfoFile, e.getMessage());
+            }
+        }
+
+        final Properties properties = bazelExecHelper.getInfo(config, INFO_KEYS);
+        if (properties == null) {
+            throw new IllegalStateException("Failed to get information from Bazel. See the output above for details.");
+        }
+        final BazelInfo bazelInfo = fromProperties(properties);
+
+        properties.setProperty(CACHE_KEY, cacheKey);
+        try {
+            Files.createParentDirs(persistedInfoFile);
+            try (Writer writer = Files.newWriter(persistedInfoFile, StandardCharsets.UTF_8)) {
+                properties.store(writer, null);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to persist bazel info into {}. Error: {}", persistedInfoFile, e.getMessage());
+        }
+        return bazelInfo;
+    }
+}
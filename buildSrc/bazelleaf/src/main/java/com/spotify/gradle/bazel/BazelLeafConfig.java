@@ -2,13 +2,21 @@ package com.spotify.gradle.bazel;
 
 import com.spotify.gradle.bazel.utils.SystemEnvironment;
 
+import org.gradle.api.Action;
 import org.gradle.api.Project;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class BazelLeafConfig {
 
@@ -18,10 +26,82 @@ public class BazelLeafConfig {
      * third: extension for OS.
      */
     private static final String DEFAULT_BIN_PATH_TEMPLATE = "%s/.bazel-leaf/%s/bazel%s";
+    /**
+     * first: user's home folder.
+     */
+    private static final String DEFAULT_REPOSITORY_CACHE_PATH_TEMPLATE = "%s/.bazel-leaf/repository-cache";
     private String mTarget;
     private String mTestTarget;
+    private final DiskCache mDiskCache = new DiskCache();
 
     public static String getBazelBinPath(Project project) {
+        return loadLocalProperties(project).getProperty("bazel.bin.path", getDefaultBazelBinPath(project));
+    }
+
+    /**
+     * The repository cache (`--repository_cache`) that keeps downloaded external archives and jars. By default, it is
+     * shared by all the workspaces of the user, so a fresh checkout does not download them again. Set
+     * `bazel.repository_cache` in `local.properties` to use another folder, or to an empty value to use Bazel's default.
+     *
+     * @return the cache folder, or null if Bazel should use its default.
+     */
+    @javax.annotation.Nullable
+    public static File getRepositoryCacheFolder(Project project) {
+        final String path = loadLocalProperties(project).getProperty("bazel.repository_cache",
+                String.format(Locale.US, DEFAULT_REPOSITORY_CACHE_PATH_TEMPLATE, System.getProperty("user.home", "/tmp")));
+        return path.isEmpty() ? null : project.getRootProject().file(path);
+    }
+
+    /**
+     * The startup options of the Bazel server. A run with startup options that differ from the running server's, kills
+     * and restarts the server, so they are the same for every run of every module in the build:
+     * <ul>
+     * <li>`bazel.output_user_root` in `local.properties` - the root of Bazel's output bases (`--output_user_root`).</li>
+     * <li>`bazel.server.heap_size` in `gradle.properties` - the server's maximum heap, for example `4g`.</li>
+     * <li>`bazel.server.host_jvm_args` in `gradle.properties` - space-separated JVM arguments for the server.</li>
+     * <li>`bazel.server.max_idle_secs` in `gradle.properties` - how long an idle server stays alive.</li>
+     * </ul>
+     */
+    public static List<String> getStartupOptions(Project project) {
+        final Project rootProject = project.getRootProject();
+        final List<String> startupOptions = new ArrayList<>();
+        final String outputUserRoot = loadLocalProperties(project).getProperty("bazel.output_user_root", "");
+        if (!outputUserRoot.isEmpty()) {
+            startupOptions.add("--output_user_root=" + rootProject.file(outputUserRoot).getAbsolutePath());
+        }
+        final Object heapSize = rootProject.getProperties().get("bazel.server.heap_size");
+        if (heapSize != null) {
+            startupOptions.add("--host_jvm_args=-Xmx" + heapSize);
+        }
+        final Object hostJvmArgs = rootProject.getProperties().get("bazel.server.host_jvm_args");
+        if (hostJvmArgs != null) {
+            for (String hostJvmArg : hostJvmArgs.toString().trim().split("\\s+")) {
+                if (!hostJvmArg.isEmpty()) {
+                    startupOptions.add("--host_jvm_args=" + hostJvmArg);
+                }
+            }
+        }
+        final Object maxIdleSecs = rootProject.getProperties().get("bazel.server.max_idle_secs");
+        if (maxIdleSecs != null) {
+            startupOptions.add("--max_idle_secs=" + maxIdleSecs);
+        }
+        return startupOptions;
+    }
+
+    /**
+     * The build flags (for example, `--define=flavor=free -c opt`) that are passed to every Bazel command that analyses
+     * targets, as set by `bazel.build.flags` in `gradle.properties`. A command with other configuration-affecting
+     * flags than the previous one's makes Bazel discard its analysis cache, so this is the only place to set them.
+     */
+    public static List<String> getBuildFlags(Project project) {
+        final Object buildFlags = project.getRootProject().getProperties().get("bazel.build.flags");
+        if (buildFlags == null || buildFlags.toString().trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(buildFlags.toString().trim().split("\\s+"));
+    }
+
+    private static Properties loadLocalProperties(Project project) {
         final Properties properties = new Properties();
         final File propertiesFile = project.getRootProject().file("local.properties");
         if (propertiesFile.exists()) {
@@ -31,8 +111,7 @@ public class BazelLeafConfig {
                 throw new RuntimeException(e);
             }
         }
-
-        return properties.getProperty("bazel.bin.path", getDefaultBazelBinPath(project));
+        return properties;
     }
 
     private static String getDefaultBazelBinPath(Project project) {
@@ -60,6 +139,25 @@ public class BazelLeafConfig {
         mTestTarget = testTarget;
     }
 
+    public DiskCache getDiskCache() {
+        return mDiskCache;
+    }
+
+    /**
+     * Configures a Bazel disk cache (`--disk_cache`) that is shared by all the builds of the workspace:
+     * <pre>
+     * bazel {
+     *     diskCache {
+     *         path = "${System.getProperty('user.home')}/.cache/bazel-disk-cache"
+     *         maxSize = '10G'
+     *     }
+     * }
+     * </pre>
+     */
+    public void diskCache(Action<? super DiskCache> action) {
+        action.execute(mDiskCache);
+    }
+
     private BazelLeafConfig verifyConfigured() {
         if (mTarget == null || mTarget.isEmpty()) {
             throw new IllegalArgumentException("Specify the target to build using Bazel, by adding \"bazel {target = 'target-name'}\" to the module's build.gradle file.");
@@ -79,10 +177,65 @@ public class BazelLeafConfig {
                 getTarget(),
                 getTestTarget(),
                 project.getRootProject().getProjectDir(),
-                project.getRootProject().getBuildDir().getAbsolutePath() + "/bazel-build/");
+                project.getRootProject().getBuildDir().getAbsolutePath() + "/bazel-build/",
+                mDiskCache.mPath == null || mDiskCache.mPath.isEmpty() ? null : project.getRootProject().file(mDiskCache.mPath),
+                mDiskCache.getMaxSizeBytes(),
+                getRepositoryCacheFolder(project),
+                getStartupOptions(project),
+                getBuildFlags(project));
     }
 
-    public static class Decorated {
+    public static class DiskCache {
+
+        private static final Pattern SIZE_PATTERN = Pattern.compile("^(\\d+)\\s*([KMGT]?)B?$", Pattern.CASE_INSENSITIVE);
+
+        private String mPath;
+        private String mMaxSize;
+
+        public String getPath() {
+            return mPath;
+        }
+
+        /**
+         * The folder of the cache. Relative paths are resolved against the root project.
+         */
+        public void setPath(String path) {
+            mPath = path;
+        }
+
+        public String getMaxSize() {
+            return mMaxSize;
+        }
+
+        /**
+         * The size the cache is trimmed down to, by evicting the least recently used entries. For example, `'500M'` or
+         * `'10G'`. Without it, the cache is never trimmed.
+         */
+        public void setMaxSize(String maxSize) {
+            mMaxSize = maxSize;
+        }
+
+        long getMaxSizeBytes() {
+            if (mMaxSize == null || mMaxSize.trim().isEmpty()) {
+                return 0;
+            }
+            final Matcher matcher = SIZE_PATTERN.matcher(mMaxSize.trim());
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException("The disk-cache maxSize '" + mMaxSize + "' is not a valid size. Use, for example, '500M' or '10G'.");
+            }
+            final String unit = matcher.group(2).toUpperCase(Locale.US);
+            final int unitPower = unit.isEmpty() ? 0 : "KMGT".indexOf(unit) + 1;
+            return Long.parseLong(matcher.group(1)) << (10 * unitPower);
+        }
+    }
+
+    /**
+     * The module's configuration, as the tasks use it. It holds only values (no project model), so it can be
+     * serialized along with the tasks.
+     */
+    public static class Decorated implements Serializable {
+
+        private static final long serialVersionUID = 1L;
 
         public final String bazelBin;
         public final String targetPath;
@@ -90,6 +243,28 @@ public class BazelLeafConfig {
         public final File workspaceRootFolder;
         public final String testTargetName;
         public final String buildOutputDir;
+        /**
+         * The folder of the Bazel disk cache, or null if the module did not configure one.
+         */
+        @javax.annotation.Nullable
+        public final File diskCacheFolder;
+        /**
+         * The size the disk cache is trimmed down to, or 0 if it should never be trimmed.
+         */
+        public final long diskCacheMaxSizeBytes;
+        /**
+         * The folder of the Bazel repository cache, or null if Bazel should use its default.
+         */
+        @javax.annotation.Nullable
+        public final File repositoryCacheFolder;
+        /**
+         * The options of the Bazel server (see {@link BazelLeafConfig#getStartupOptions(Project)}).
+         */
+        public final List<String> startupOptions;
+        /**
+         * The flags of every analysing command (see {@link BazelLeafConfig#getBuildFlags(Project)}).
+         */
+        public final List<String> buildFlags;
 
         public Decorated(
                 String bazelBin,
@@ -98,6 +273,26 @@ public class BazelLeafConfig {
                 String testTargetName,
                 File workspaceRootFolder,
                 String buildOutputDir) {
+            this(bazelBin, targetPath, targetName, testTargetName, workspaceRootFolder, buildOutputDir, null, 0, null, Collections.emptyList(), Collections.emptyList());
+        }
+
+        public Decorated(
+                String bazelBin,
+                String targetPath,
+                String targetName,
+                String testTargetName,
+                File workspaceRootFolder,
+                String buildOutputDir,
+                @javax.annotation.Nullable File diskCacheFolder,
+                long diskCacheMaxSizeBytes,
+                @javax.annotation.Nullable File repositoryCacheFolder,
+                List<String> startupOptions,
+                List<String> buildFlags) {
+            this.diskCacheFolder = diskCacheFolder;
+            this.diskCacheMaxSizeBytes = diskCacheMaxSizeBytes;
+            this.repositoryCacheFolder = repositoryCacheFolder;
+            this.startupOptions = startupOptions;
+            this.buildFlags = buildFlags;
             this.bazelBin = bazelBin;
             this.targetPath = targetPath;
             this.targetName = targetName;
@@ -105,5 +300,13 @@ public class BazelLeafConfig {
             this.buildOutputDir = buildOutputDir;
             this.workspaceRootFolder = workspaceRootFolder;
         }
+
+        public String getTargetLabel() {
+            return targetPath + ':' + targetName;
+        }
+
+        public String getTestTargetLabel() {
+            return targetPath + ':' + testTargetName;
+        }
     }
 }
@@ -3,13 +3,20 @@ package com.spotify.gradle.bazel;
 import com.google.common.annotations.VisibleForTesting;
 import com.spotify.gradle.bazel.strategies.Factory;
 import com.spotify.gradle.bazel.strategies.Strategy;
+import com.spotify.gradle.bazel.tasks.BazelBuildTask;
 import com.spotify.gradle.bazel.tasks.BazelCleanTask;
 import com.spotify.gradle.bazel.tasks.BazelConfigTask;
 import com.spotify.gradle.bazel.tasks.BazelExpungeTask;
 import com.spotify.gradle.bazel.tasks.BazelInfoTask;
+import com.spotify.gradle.bazel.tasks.BazelInvocationScheduler;
 import com.spotify.gradle.bazel.tasks.BazelTargetCleanTask;
 import com.spotify.gradle.bazel.tasks.DownloadBazelTask;
+import com.spotify.gradle.bazel.utils.AnalysisCacheMonitor;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
+import com.spotify.gradle.bazel.utils.BazelOptionNormalizer;
+import com.spotify.gradle.bazel.utils.BazelPackages;
+import com.spotify.gradle.bazel.utils.DiskCacheCollector;
+import com.spotify.gradle.bazel.utils.RootScope;
 import com.spotify.gradle.hatchej.HatchejImlAction;
 import com.spotify.gradle.hatchej.HatchejImlActionFactory;
 import com.spotify.gradle.hatchej.HatchejModel;
@@ -20,18 +27,25 @@ import org.gradle.api.Project;
 import org.gradle.api.Task;
 import org.gradle.api.artifacts.Configuration;
 import org.gradle.api.artifacts.Dependency;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.internal.artifacts.dependencies.DefaultClientModule;
+import org.gradle.api.tasks.PathSensitivity;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
-import java.util.Properties;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -83,6 +97,8 @@ public class BazelLeafPlugin implements Plugin<Project> {
         defaultConfiguration.setVisible(true);
 
         mBazelBinPath = BazelLeafConfig.getBazelBinPath(project);
+        //every run of this plugin, including the binary's validation, must use the same server.
+        mBazelExecHelper.setStartupOptions(BazelLeafConfig.getStartupOptions(project));
 
         final DefaultTask assemble = project.getTasks().create("assemble", DefaultTask.class);
         final DefaultTask check = project.getTasks().create("check", DefaultTask.class);
@@ -94,51 +110,121 @@ public class BazelLeafPlugin implements Plugin<Project> {
         final DownloadBazelTask downloadBazelBinTask = DownloadBazelTask.injectDownloadTask(project, mBazelBinPath);
         //this task will not be NULL if injection took place (should happen only once).
         if (downloadBazelBinTask != null) {
-            //verifying that bazel is valid
-            if (!checkIsBazelBinaryValid(mBazelBinPath, project.getRootDir(), downloadBazelBinTask)) {
-                throw new IllegalStateException(String.format("Bazel binary at %s is invalid, and was unable to download a valid binary.", mBazelBinPath));
+            //verifying that bazel is valid. This will only block if the binary was never validated before.
+            final BazelBinaryValidation validation = RootScope.get(project, BazelBinaryValidation.class,
+                    () -> BazelBinaryValidation.start(mBazelBinPath, () -> checkIsBazelBinaryValid(mBazelBinPath, project.getRootDir(), downloadBazelBinTask)));
+            if (validation.isDone()) {
+                validation.await();
             }
         }
 
-        project.afterEvaluate(this::configurePlugin);
-    }
+        //starting the server while the projects are configured, so the first Bazel run does not wait for its JVM.
+        if (isServerPrewarmEnabled(project.getRootProject())) {
+            RootScope.get(project, BazelServer.class, () -> BazelServer.prewarm(
+                    RootScope.get(project, BazelBinaryValidation.class, () -> BazelBinaryValidation.alreadyValid(mBazelBinPath)),
+                    mBazelExecHelper, mBazelBinPath, project.getRootDir(), project.getRootProject().getBuildDir()));
+        }
 
-    private void configurePlugin(Project project) {
-        final Configuration defaultConfiguration = project.getConfigurations().findByName(Dependency.DEFAULT_CONFIGURATION);
+        project.afterEvaluate(this::registerBazelTargets);
+    }
 
+    /*
+     * Each module adds its targets to the build's RequestedModules once its `bazel {}` block was evaluated.
+     * The module is configured only after all the projects were evaluated, and only if the requested tasks need it.
+     * The targets of all the needed modules are registered with the shared aspect service at once, so the first module
+     * to query the service will trigger a single aspect run that covers all of them.
+     */
+    private void registerBazelTargets(Project project) {
         final Project rootProject = project.getRootProject();
+        RootScope.get(project, BazelBinaryValidation.class, () -> BazelBinaryValidation.alreadyValid(mBazelBinPath)).await();
 
         final BazelLeafConfig.Decorated config = project.getExtensions().getByType(BazelLeafConfig.class).decorate(project, mBazelBinPath);
 
-        final Properties bazelInfo = mBazelExecHelper.getInfo(config);
+        final BazelAspectService bazelAspectService = BazelAspectService.obtain(rootProject,
+                () -> mBazelAspectServiceFactory.create(rootProject,
+                        new AspectRunner(config, mBazelExecHelper),
+                        new AspectResultsCache(new File(rootProject.getBuildDir(), "bazel-leaf/aspects-cache"),
+                                config.workspaceRootFolder, new File(config.bazelBin), BazelAspectService.TARGET_INFO_ASPECT,
+                                DaemonModelCache.forWorkspace(config.workspaceRootFolder))));
+        final RequestedModules requestedModules = RequestedModules.obtain(project, bazelAspectService);
+        requestedModules.addModule(project.getPath(), getTargetLabels(config));
+
+        project.getGradle().projectsEvaluated(gradle -> requestedModules.configureIfNeeded(project.getPath(),
+                () -> configurePlugin(project, config, bazelAspectService, requestedModules)));
+    }
 
-        project.setBuildDir(String.format(Locale.US, "%s/%s", bazelInfo.getProperty("bazel-bin"), config.targetPath.substring(2)));
+    private void configurePlugin(
+            Project project,
+            BazelLeafConfig.Decorated config,
+            BazelAspectService bazelAspectService,
+            RequestedModules requestedModules) {
+        final Configuration defaultConfiguration = project.getConfigurations().findByName(Dependency.DEFAULT_CONFIGURATION);
 
-        final HatchejModel hatchejModel = new HatchejModel();
+        final Project rootProject = project.getRootProject();
 
-        final AspectRunner aspectRunner = new AspectRunner(config, mBazelExecHelper);
-        final BazelAspectService bazelAspectService = mBazelAspectServiceFactory.create(rootProject, aspectRunner);
+        final DaemonModelCache daemonModelCache = DaemonModelCache.forWorkspace(config.workspaceRootFolder);
+        if (config.diskCacheFolder != null && config.diskCacheMaxSizeBytes > 0) {
+            //trimming the disk cache once per build, while the build is running.
+            RootScope.get(project, DiskCacheCollector.class, () -> {
+                final DiskCacheCollector diskCacheCollector = new DiskCacheCollector(config.diskCacheFolder, config.diskCacheMaxSizeBytes);
+                diskCacheCollector.startInBackground();
+                return diskCacheCollector;
+            });
+        }
+        //reporting, once per build, how many times Bazel re-analysed everything.
+        RootScope.get(project, AnalysisCacheMonitor.class, () -> {
+            final AnalysisCacheMonitor analysisCacheMonitor = AnalysisCacheMonitor.forWorkspace(config.workspaceRootFolder);
+            final int discardsBeforeBuild = analysisCacheMonitor.getDiscardCount();
+            project.getGradle().buildFinished(buildResult -> {
+                final int discards = analysisCacheMonitor.getDiscardCount() - discardsBeforeBuild;
+                if (discards > 0) {
+                    LOGGER.warn("Bazel discarded its analysis cache {} time(s) during this build.", discards);
+                }
+            });
+            return analysisCacheMonitor;
+        });
+        final BazelInfo bazelInfo = BazelInfo.obtain(project, config, mBazelExecHelper);
+
+        project.setBuildDir(new File(bazelInfo.bazelBin, config.targetPath.substring(2)));
+
+        final HatchejModel hatchejModel = new HatchejModel();
 
         final Strategy strategy = Factory.buildStrategy(
-                aspectRunner.getAspectResult("get_rule_kind.bzl", config.targetName).stream().findFirst()
-                        .orElse("java_library"), config);
+                bazelAspectService.getRuleKind(config.getTargetLabel()).orElse("java_library"), config);
         /*
          * creating a Bazel-Build task
          */
         final Task bazelBuildTask = strategy.createBazelExecTask(project);
         project.getTasks().findByName("assemble").dependsOn(bazelBuildTask);
 
-        strategy.getBazelArtifacts(aspectRunner, project, bazelBuildTask).stream()
+        final List<File> bazelOutputs = strategy.getBazelArtifacts(bazelAspectService, project, bazelBuildTask).stream()
                 .peek(defaultConfiguration.getOutgoing().getArtifacts()::add)
                 .map(BazelPublishArtifact::getFile)
                 .peek(hatchejModel.getProjectOutputs()::add)
-                .forEach(bazelBuildTask.getOutputs()::file);
+                .collect(Collectors.toList());
+        //each output is a named property, so the task's outputs can be stored in the build cache. Bazel does not trust
+        //the files Gradle restores into bazel-out: the next Bazel run checks each output against its action cache, keeps
+        //one whose digest matches, and rebuilds (overwrites) any other, for example on a fresh output base.
+        for (int outputIndex = 0; outputIndex < bazelOutputs.size(); outputIndex++) {
+            bazelBuildTask.getOutputs().file(bazelOutputs.get(outputIndex)).withPropertyName("bazelOutput" + outputIndex);
+        }
 
-        final Set<File> sourceFolders = bazelAspectService.getSourceFolders(config.targetName);
+        //a chain of modules that depend on each other, is built by a single invocation.
+        project.getGradle().getTaskGraph().whenReady(taskGraph -> {
+            if (taskGraph.hasTask(bazelBuildTask)) {
+                final Set<String> relatedLabels = new HashSet<>(bazelAspectService.getTransitiveModuleDeps(config.getTargetLabel()));
+                relatedLabels.add(config.getTargetLabel());
+                BazelInvocationScheduler.obtain(project, mBazelExecHelper)
+                        .planChained("build", ((BazelBuildTask) bazelBuildTask).getBazelConfig().getTargetLabel(), relatedLabels);
+            }
+        });
+
+        final Set<File> sourceFolders = bazelAspectService.getSourceFolders(config.getTargetLabel());
         hatchejModel.getSourceFolders().addAll(sourceFolders);
-        sourceFolders.forEach(bazelBuildTask.getInputs()::dir);
+        final BazelAspectService.Deps targetDeps = bazelAspectService.getAllDeps(config.getTargetLabel());
+        requireModuleDeps(requestedModules, targetDeps);
+        declareBuildInputs(bazelAspectService, bazelInfo, config, config.getTargetLabel(), bazelBuildTask);
 
-        final BazelAspectService.Deps targetDeps = bazelAspectService.getAllDeps(config.targetName);
         targetDeps.moduleDeps.stream()
                 .map(BazelLeafPlugin::convertLocalBazelDepToGradle)
                 .peek(hatchejModel.getProjectDependencies()::add)
@@ -161,16 +247,29 @@ public class BazelLeafPlugin implements Plugin<Project> {
         /*
          * Adding tests
          */
-        if (config.testTargetName != null && !config.testTargetName.isEmpty()) {
-            final Strategy testStrategy = Factory.buildStrategy(aspectRunner.getAspectResult("get_rule_kind.bzl", config.testTargetName).stream().findFirst().orElse("java_test"), config);
+        if (hasTestTarget(config)) {
+            final Strategy testStrategy = Factory.buildStrategy(bazelAspectService.getRuleKind(config.getTestTargetLabel()).orElse("java_test"), config);
             final Task testTask = testStrategy.createBazelExecTask(project);
             bazelTargetCleanTask.addTargetTask(testTask);
-            final Set<File> testSources = bazelAspectService.getSourceFolders(config.testTargetName);
-            testSources.forEach(testTask.getInputs()::dir);
+            final Set<File> testSources = bazelAspectService.getSourceFolders(config.getTestTargetLabel());
+            final BazelAspectService.Deps testTargetDeps = bazelAspectService.getAllDeps(config.getTestTargetLabel());
+            requireModuleDeps(requestedModules, testTargetDeps);
+            declareBuildInputs(bazelAspectService, bazelInfo, config, config.getTestTargetLabel(), testTask);
+            //test.xml and test.log of the target, next to bazel-bin (for example, `bazel-out/k8-fastbuild/testlogs/lib2/AllTests`).
+            testTask.getOutputs().dir(new File(new File(bazelInfo.bazelBin.getParentFile(), "testlogs"),
+                    BazelPackages.getPackagePath(config.getTestTargetLabel()) + '/' + config.testTargetName))
+                    .withPropertyName("bazelTestLogs");
             hatchejModel.getTestSourceFolders().addAll(testSources);
             testTask.dependsOn(bazelBuildTask);
+            if (isTestBatchingEnabled(rootProject)) {
+                //every test target that is about to run, is run by the first test task, in a single invocation.
+                project.getGradle().getTaskGraph().whenReady(taskGraph -> {
+                    if (taskGraph.hasTask(testTask)) {
+                        BazelInvocationScheduler.obtain(project, mBazelExecHelper).planBatch("test", config.getTestTargetLabel(), getTestBatchArgs(rootProject));
+                    }
+                });
+            }
 
-            final BazelAspectService.Deps testTargetDeps = bazelAspectService.getAllDeps(config.testTargetName);
             testTargetDeps.moduleDeps.stream()
                     .filter(bazelDep -> !bazelDep.equals(config.targetPath + ':' + config.targetName))//no need to depend on self for tests
                     .map(BazelLeafPlugin::convertLocalBazelDepToGradle)
@@ -188,7 +287,11 @@ public class BazelLeafPlugin implements Plugin<Project> {
 
         try {
             HatchejImlAction hatchejImlAction = mHatchejImlActionFactory.create();
-            hatchejImlAction.modifyImlFile(project, hatchejModel);
+            final File imlFile = hatchejImlAction.getImlFile(project);
+            if (imlFile != null && !daemonModelCache.isImlUpToDate(project.getPath(), hatchejModel, imlFile)) {
+                hatchejImlAction.modifyImlFile(project, hatchejModel);
+                daemonModelCache.markImlWritten(project.getPath(), hatchejModel, imlFile);
+            }
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -196,6 +299,106 @@ public class BazelLeafPlugin implements Plugin<Project> {
         addBazelTasksToRootProject(rootProject, config);
     }
 
+    /*
+     * Marks the Bazel modules of the given deps as needed. This registers their targets (and configures the modules, if
+     * their configuration was deferred), so the inputs of a task that builds on them can be listed.
+     */
+    private static void requireModuleDeps(RequestedModules requestedModules, BazelAspectService.Deps deps) {
+        deps.moduleDeps.stream()
+                .map(BazelLeafPlugin::convertLocalBazelDepToGradle)
+                .forEach(requestedModules::require);
+    }
+
+    /*
+     * Declares the exact files a Bazel build of the target reads (see BazelAspectService#getBuildInputFiles), its
+     * package folders, its external jars, and the WORKSPACE file that pins them. So, an unchanged module is UP-TO-DATE
+     * without launching Bazel. Gradle only re-hashes the files whose size or modification time changed since the last build.
+     * The build flags and the Bazel version are inputs too, since they change the outputs of the same files.
+     */
+    private static void declareBuildInputs(BazelAspectService bazelAspectService, BazelInfo bazelInfo,
+            BazelLeafConfig.Decorated config, String targetLabel, Task task) {
+        task.getInputs().properties(getBuildInputProperties(bazelInfo, config));
+        final Set<File> inputFiles = bazelAspectService.getBuildInputFiles(targetLabel);
+        final Set<File> inputFolders = bazelAspectService.getBuildInputFolders(targetLabel);
+        if (inputFiles == null || inputFolders == null) {
+            //without the full list of files, Gradle can not tell whether Bazel has anything to do.
+            LOGGER.info("Not all the inputs of {} are known. {} will always run.", targetLabel, task.getPath());
+            task.getOutputs().upToDateWhen(notUsed -> false);
+            task.getOutputs().doNotCacheIf("Not all the Bazel inputs of " + targetLabel + " are known", notUsed -> true);
+            return;
+        }
+
+        //paths are relative, and external jars are identified by name, so the cache key does not depend on where the
+        //workspace, or Bazel's output base, are.
+        task.getInputs().files(inputFiles).withPropertyName("bazelSourceFiles").withPathSensitivity(PathSensitivity.RELATIVE);
+        //the exact files are those of the last aspect run (which may be cached), so they miss a file that was added to a
+        //glob of the package since (and keep a deleted one). The package folders hold those too.
+        task.getInputs().files(getPackageFolderInputs(task.getProject(), inputFolders))
+                .withPropertyName("bazelPackageFolders")
+                .withPathSensitivity(PathSensitivity.RELATIVE);
+        task.getInputs().files(bazelAspectService.getAllDeps(targetLabel).remoteWorkspaceDeps.stream()
+                .map(bazelDep -> convertExternalJarBazelLocalPath(bazelInfo, bazelDep.jarPath))
+                .collect(Collectors.toList()))
+                .withPropertyName("bazelExternalJars")
+                .withPathSensitivity(PathSensitivity.NAME_ONLY);
+        task.getInputs().files(new File(config.workspaceRootFolder, "WORKSPACE"), new File(config.workspaceRootFolder, "WORKSPACE.bazel"))
+                .withPropertyName("bazelWorkspaceFile")
+                .withPathSensitivity(PathSensitivity.RELATIVE);
+    }
+
+    /*
+     * The flags are normalized (like `-c opt` to `--compilation_mode=opt`), so spelling them differently does not miss the cache.
+     */
+    @VisibleForTesting
+    static Map<String, Object> getBuildInputProperties(BazelInfo bazelInfo, BazelLeafConfig.Decorated config) {
+        final Map<String, Object> properties = new HashMap<>();
+        properties.put("bazelBuildFlags", BazelOptionNormalizer.normalize("build", config.buildFlags, Collections.emptyList()));
+        properties.put("bazelVersion", bazelInfo.release);
+        return properties;
+    }
+
+    /*
+     * The files in the package folders, without the build outputs and IDE files that live next to the sources (the
+     * Gradle build folder of a module is also its package folder), and without the folders of subpackages, which belong
+     * to other packages (the root package would otherwise hold the whole workspace).
+     */
+    @VisibleForTesting
+    static FileCollection getPackageFolderInputs(Project project, Set<File> packageFolders) {
+        return project.files(packageFolders.stream()
+                .map(packageFolder -> project.fileTree(packageFolder)
+                        .exclude("**/build/**", "**/.gradle/**", "bazel-*", "**/*.iml", "**/.idea/**")
+                        .exclude(element -> element.isDirectory() && BazelPackages.isPackageFolder(element.getFile())))
+                .toArray());
+    }
+
+    private static boolean isServerPrewarmEnabled(Project rootProject) {
+        return !"false".equals(String.valueOf(rootProject.getProperties().get("bazel.server.prewarm")));
+    }
+
+    private static boolean isTestBatchingEnabled(Project rootProject) {
+        return Boolean.parseBoolean(String.valueOf(rootProject.getProperties().get("bazel.test.batch")));
+    }
+
+    /*
+     * A batch runs the tests of all the modules, so one failing module should not hide the results of the others, and
+     * the tests can use all the cores of the machine (unless `bazel.test.local_jobs` says otherwise).
+     */
+    private static List<String> getTestBatchArgs(Project rootProject) {
+        final Object localTestJobs = rootProject.getProperties().get("bazel.test.local_jobs");
+        return Arrays.asList("--keep_going",
+                "--local_test_jobs=" + (localTestJobs != null ? localTestJobs : Runtime.getRuntime().availableProcessors()));
+    }
+
+    private static boolean hasTestTarget(BazelLeafConfig.Decorated config) {
+        return config.testTargetName != null && !config.testTargetName.isEmpty();
+    }
+
+    private static List<String> getTargetLabels(BazelLeafConfig.Decorated config) {
+        return hasTestTarget(config)
+                ? Arrays.asList(config.getTargetLabel(), config.getTestTargetLabel())
+                : Collections.singletonList(config.getTargetLabel());
+    }
+
     private static void addBazelTasksToRootProject(
             Project rootProject,
             BazelLeafConfig.Decorated config) {
@@ -256,9 +459,9 @@ public class BazelLeafPlugin implements Plugin<Project> {
     }
 
     private static String convertExternalJarBazelLocalPath(
-            Properties bazelInfo,
+            BazelInfo bazelInfo,
             String pathToExternalFile) {
-        return String.format(Locale.US, "%s/%s", bazelInfo.getProperty("output_base"), pathToExternalFile);
+        return String.format(Locale.US, "%s/%s", bazelInfo.outputBase.getPath(), pathToExternalFile);
     }
 
     private static String convertLocalBazelDepToGradle(BazelAspectService.LocalBazelTarget bazelDep) {
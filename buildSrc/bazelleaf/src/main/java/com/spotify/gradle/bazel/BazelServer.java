@@ -0,0 +1,75 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.bazel.utils.BazelExecHelper;
+import com.spotify.gradle.bazel.utils.BazelServerRecord;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The workspace's Bazel server, as seen by the build.
+ * <p>
+ * The server is started in the background as soon as the plugin is applied, so its JVM startup overlaps with the
+ * configuration of the Gradle projects, instead of blocking the first `bazel` run. All the runs use the same startup
+ * options (see {@link BazelLeafConfig#getStartupOptions(org.gradle.api.Project)}), and the server's PID is recorded
+ * (see {@link BazelServerRecord}), so a server that was restarted since the last build is reported.
+ */
+class BazelServer {
+
+    private static final Logger LOGGER = Logging.getLogger(BazelServer.class);
+
+    private BazelServer() {
+        /*the server is shared by the build's modules; see RootScope.*/
+    }
+
+    /**
+     * Starts the server in the background, once the binary was validated.
+     */
+    static BazelServer prewarm(BazelBinaryValidation validation, BazelExecHelper bazelExecHelper, String bazelBinPath,
+            File workspaceRootFolder, File rootBuildDir) {
+        final Thread prewarmThread = new Thread(() -> {
+            try {
+                validation.await();
+                start(bazelExecHelper, bazelBinPath, workspaceRootFolder, BazelServerRecord.getRecordFile(rootBuildDir));
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                //the build's first actual Bazel run will report the problem.
+                LOGGER.info("Failed to start the Bazel server in the background. Error: {}", e.getMessage());
+            }
+        }, "bazel-leaf-server-prewarm");
+        prewarmThread.setDaemon(true);
+        prewarmThread.start();
+        return new BazelServer();
+    }
+
+    static BazelServerRecord start(BazelExecHelper bazelExecHelper, String bazelBinPath, File workspaceRootFolder, File recordFile)
+            throws IOException, InterruptedException {
+        final long startTime = System.currentTimeMillis();
+        final List<String> output = bazelExecHelper.createBazelRun(false, bazelBinPath, workspaceRootFolder, "info",
+                Collections.singletonList("server_pid")).start().getExecutionOutput();
+        if (output.isEmpty()) {
+            throw new IOException("bazel info did not report the server's PID.");
+        }
+        final String pid = output.get(output.size() - 1).trim();
+        final List<String> startupOptions = bazelExecHelper.getStartupOptions();
+
+        final BazelServerRecord previous = BazelServerRecord.read(recordFile);
+        if (previous != null && !previous.pid.equals(pid)) {
+            if (previous.startupOptions.equals(startupOptions)) {
+                //most likely, the previous server idled out (see `bazel.server.max_idle_secs`).
+                LOGGER.info("Started a new Bazel server (PID {}). The previous one (PID {}) was no longer running.", pid, previous.pid);
+            } else {
+                LOGGER.lifecycle("Restarted the Bazel server (PID {}), since its startup options changed from {} to {}.",
+                        pid, previous.startupOptions, startupOptions);
+            }
+        }
+        final BazelServerRecord record = BazelServerRecord.observe(recordFile, previous, pid, startupOptions);
+        LOGGER.info("Bazel server (PID {}) is ready. It is up for {}, and took {}ms to answer.",
+                pid, record.getUptime(), System.currentTimeMillis() - startTime);
+        return record;
+    }
+}
@@ -0,0 +1,234 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.hatchej.HatchejModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory cache of the Bazel model, which lives as long as the Gradle daemon does.
+ * <p>
+ * There is one instance per workspace. It holds the aspect records of each label, the {@link BazelInfo}, and
+ * the source folders derived from each label's source files, and the last {@link HatchejModel} written into each
+ * module's IML file. A {@link WatchService} over the workspace root
+ * and the folders of the cached labels' BUILD and `.bzl` files evicts only the labels that depend on a changed file
+ * (a WORKSPACE change evicts everything). Since some platforms poll for file events, every entry also remembers the
+ * timestamps of its input files and is dropped if any of them changed, so a lagging watcher never serves stale data.
+ */
+class DaemonModelCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DaemonModelCache.class);
+    private static final Map<File, DaemonModelCache> INSTANCES = new ConcurrentHashMap<>();
+
+    private final File mWorkspaceRootFolder;
+    private final Map<String, TargetEntry> mTargetEntries = new HashMap<>();
+    private final Map<String, BazelInfo> mBazelInfos = new HashMap<>();
+    private final Map<String, SourceFoldersEntry> mSourceFolders = new HashMap<>();
+    private final Map<String, ImlEntry> mImlEntries = new HashMap<>();
+    private final Map<Path, WatchKey> mWatchedFolders = new HashMap<>();
+    private WatchService mWatchService;
+
+    static DaemonModelCache forWorkspace(File workspaceRootFolder) {
+        return INSTANCES.computeIfAbsent(workspaceRootFolder.getAbsoluteFile(), DaemonModelCache::new);
+    }
+
+    DaemonModelCache(File workspaceRootFolder) {
+        mWorkspaceRootFolder = workspaceRootFolder.getAbsoluteFile();
+    }
+
+    /**
+     * @return the aspect records of the given label, or null if they are not cached or may be outdated.
+     */
+    @javax.annotation.Nullable
+    synchronized List<String> getTargetRecords(String targetLabel) {
+        final TargetEntry entry = mTargetEntries.get(targetLabel);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isModified()) {
+            mTargetEntries.remove(targetLabel);
+            return null;
+        }
+        return entry.records;
+    }
+
+    synchronized void putTargetRecords(String targetLabel, List<String> records, Collection<File> inputFiles) {
+        final Map<File, Long> inputTimestamps = new HashMap<>();
+        inputFiles.forEach(inputFile -> inputTimestamps.put(inputFile.getAbsoluteFile(), inputFile.lastModified()));
+        mTargetEntries.put(targetLabel, new TargetEntry(records, inputTimestamps));
+
+        watchFolder(mWorkspaceRootFolder);
+        inputTimestamps.keySet().forEach(inputFile -> watchFolder(inputFile.getParentFile()));
+    }
+
+    /**
+     * @return the {@link BazelInfo} stored under the given key, running the supplier only if it was not cached.
+     */
+    BazelInfo getBazelInfo(String key, Supplier<BazelInfo> infoSupplier) {
+        synchronized (this) {
+            final BazelInfo cached = mBazelInfos.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        final BazelInfo info = infoSupplier.get();
+        synchronized (this) {
+            mBazelInfos.put(key, info);
+        }
+        return info;
+    }
+
+    /**
+     * @return the source folders stored for the given label, running the supplier only if they were not cached, or
+     * if the label's source files changed (were added, removed, or modified) since.
+     */
+    Set<File> getSourceFolders(String targetLabel, Collection<File> sourceFiles, Supplier<Set<File>> sourceFoldersSupplier) {
+        final Map<File, Long> sourceTimestamps = new HashMap<>();
+        sourceFiles.forEach(sourceFile -> sourceTimestamps.put(sourceFile.getAbsoluteFile(), sourceFile.lastModified()));
+        synchronized (this) {
+            final SourceFoldersEntry cached = mSourceFolders.get(targetLabel);
+            if (cached != null && cached.sourceTimestamps.equals(sourceTimestamps)) {
+                return cached.sourceFolders;
+            }
+        }
+        final Set<File> sourceFolders = Collections.unmodifiableSet(sourceFoldersSupplier.get());
+        synchronized (this) {
+            mSourceFolders.put(targetLabel, new SourceFoldersEntry(sourceFolders, sourceTimestamps));
+        }
+        return sourceFolders;
+    }
+
+    /**
+     * @return true if the given model was already written into the module's IML file, and the file was not changed since.
+     */
+    synchronized boolean isImlUpToDate(String projectPath, HatchejModel model, File imlFile) {
+        final ImlEntry entry = mImlEntries.get(projectPath);
+        return entry != null && entry.model.equals(model) && entry.imlFile.equals(imlFile) && entry.imlTimestamp == imlFile.lastModified();
+    }
+
+    synchronized void markImlWritten(String projectPath, HatchejModel model, File imlFile) {
+        mImlEntries.put(projectPath, new ImlEntry(model, imlFile, imlFile.lastModified()));
+    }
+
+    private void watchFolder(File folder) {
+        if (!folder.isDirectory()) {
+            return;
+        }
+        final Path folderPath = folder.toPath();
+        if (mWatchedFolders.containsKey(folderPath)) {
+            return;
+        }
+        try {
+            if (mWatchService == null) {
+                mWatchService = FileSystems.getDefault().newWatchService();
+                final Thread watcherThread = new Thread(this::processWatchEvents, "bazel-leaf-workspace-watcher");
+                watcherThread.setDaemon(true);
+                watcherThread.start();
+            }
+            mWatchedFolders.put(folderPath, folderPath.register(mWatchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE));
+        } catch (IOException e) {
+            //without a watch, the timestamps check still guards this folder's entries.
+            LOGGER.info("Failed to watch {} for changes. Error: {}", folder, e.getMessage());
+        }
+    }
+
+    private void processWatchEvents() {
+        try {
+            while (true) {
+                final WatchKey watchKey = mWatchService.take();
+                final Path folder = (Path) watchKey.watchable();
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidateAll();
+                    } else {
+                        onFileChanged(folder.resolve((Path) event.context()));
+                    }
+                }
+                if (!watchKey.reset()) {
+                    synchronized (this) {
+                        mWatchedFolders.remove(folder);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("Stopped watching workspace {}", mWorkspaceRootFolder);
+        }
+    }
+
+    private void onFileChanged(Path changedFile) {
+        final String fileName = changedFile.getFileName().toString();
+        if (fileName.equals("WORKSPACE") || fileName.equals("WORKSPACE.bazel")) {
+            invalidateAll();
+        } else if (fileName.equals("BUILD") || fileName.equals("BUILD.bazel") || fileName.endsWith(".bzl")) {
+            //a new BUILD.bazel shadows an existing BUILD file, so the whole folder is considered changed.
+            final File changedFolder = changedFile.getParent().toFile();
+            synchronized (this) {
+                mTargetEntries.values().removeIf(entry -> entry.hasInputIn(changedFolder));
+            }
+        }
+    }
+
+    private synchronized void invalidateAll() {
+        mTargetEntries.clear();
+        mSourceFolders.clear();
+    }
+
+    private static class TargetEntry {
+        final List<String> records;
+        final Map<File, Long> inputTimestamps;
+
+        TargetEntry(List<String> records, Map<File, Long> inputTimestamps) {
+            this.records = records;
+            this.inputTimestamps = inputTimestamps;
+        }
+
+        boolean isModified() {
+            return inputTimestamps.entrySet().stream().anyMatch(input -> input.getKey().lastModified() != input.getValue());
+        }
+
+        boolean hasInputIn(File folder) {
+            return inputTimestamps.keySet().stream().anyMatch(inputFile -> folder.equals(inputFile.getParentFile()));
+        }
+    }
+
+    private static class SourceFoldersEntry {
+        final Set<File> sourceFolders;
+        final Map<File, Long> sourceTimestamps;
+
+        SourceFoldersEntry(Set<File> sourceFolders, Map<File, Long> sourceTimestamps) {
+            this.sourceFolders = sourceFolders;
+            this.sourceTimestamps = sourceTimestamps;
+        }
+    }
+
+    private static class ImlEntry {
+        final HatchejModel model;
+        final File imlFile;
+        final long imlTimestamp;
+
+        ImlEntry(HatchejModel model, File imlFile, long imlTimestamp) {
+            this.model = model;
+            this.imlFile = imlFile;
+            this.imlTimestamp = imlTimestamp;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.bazel.utils.RootScope;
+
+import org.gradle.api.Project;
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.util.GradleVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides which Bazel modules the build needs, so only those are configured, and only their targets are analysed by
+ * Bazel. Running `./gradlew :lib1:test` then costs the aspect analysis of `lib1`'s dependencies, not of every module.
+ * <p>
+ * A module is needed if a requested task belongs to it (or to a parent project, for task names that are not qualified),
+ * if a needed project depends on it, or if a needed Bazel module depends on it (which is only known once that module
+ * was configured, see {@link #require(String)}). Builds without requested tasks (for example, an IDE sync) need all
+ * the modules.
+ */
+class RequestedModules {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestedModules.class);
+    //options that are followed by a value, which is not a task name. For example, `--tests *Lib2*`.
+    private static final Set<String> OPTIONS_WITH_VALUE = new HashSet<>(Arrays.asList(
+            "-x", "--exclude-task", "--tests", "--configuration", "--dependency"));
+    //the Gradle version that added ProjectDependency#getPath, and deprecated ProjectDependency#getDependencyProject.
+    private static final GradleVersion DEPENDENCY_PATH_GRADLE_VERSION = GradleVersion.version("8.11");
+
+    private final Project mRootProject;
+    private final BazelAspectService mAspectService;
+    //the target labels of each Bazel module, by project path.
+    private final Map<String, Collection<String>> mModuleTargets = new LinkedHashMap<>();
+    private final Map<String, Runnable> mDeferredConfigurations = new HashMap<>();
+    private final Set<String> mConfigured = new HashSet<>();
+    private Set<String> mRequestedPaths;
+    private boolean mAllRequested;
+
+    RequestedModules(Project rootProject, BazelAspectService aspectService) {
+        mRootProject = rootProject;
+        mAspectService = aspectService;
+    }
+
+    static RequestedModules obtain(Project project, BazelAspectService aspectService) {
+        return RootScope.get(project, RequestedModules.class, () -> new RequestedModules(project.getRootProject(), aspectService));
+    }
+
+    /**
+     * Adds a Bazel module, once its `bazel {}` block was evaluated.
+     */
+    synchronized void addModule(String projectPath, Collection<String> targetLabels) {
+        mModuleTargets.put(projectPath, targetLabels);
+    }
+
+    /**
+     * Runs the module's configuration now, if the build needs the module, or later, if a needed module turns out to
+     * depend on it.
+     */
+    synchronized void configureIfNeeded(String projectPath, Runnable configuration) {
+        computeRequestedPaths();
+        if (mAllRequested || mRequestedPaths.contains(projectPath)) {
+            configure(projectPath, configuration);
+        } else {
+            LOGGER.info("Not configuring the Bazel module {}, since none of the requested tasks needs it.", projectPath);
+            mDeferredConfigurations.put(projectPath, configuration);
+        }
+    }
+
+    /**
+     * Marks the given project as needed, configuring it right away if its configuration was deferred.
+     * <p>
+     * The Bazel modules it depends on (as far as the aspect already reported them) are marked as needed too, and all
+     * their targets are registered at once, so the next aspect run covers all of them, instead of one run per level of
+     * dependencies. They are configured when the module's configuration requires them.
+     */
+    synchronized void require(String projectPath) {
+        computeRequestedPaths();
+        final List<String> toVisit = new ArrayList<>();
+        toVisit.add(projectPath);
+        while (!toVisit.isEmpty()) {
+            final String visited = toVisit.remove(toVisit.size() - 1);
+            final Collection<String> targetLabels = mModuleTargets.get(visited);
+            if (mRequestedPaths.add(visited) && targetLabels != null) {
+                mAspectService.registerTargets(targetLabels);
+                targetLabels.stream()
+                        .flatMap(targetLabel -> mAspectService.getReportedModuleDeps(targetLabel).stream())
+                        .map(this::findModulePath)
+                        .filter(modulePath -> modulePath != null)
+                        .forEach(toVisit::add);
+            }
+        }
+        final Runnable deferredConfiguration = mDeferredConfigurations.remove(projectPath);
+        if (deferredConfiguration != null) {
+            configure(projectPath, deferredConfiguration);
+        }
+    }
+
+    @javax.annotation.Nullable
+    private String findModulePath(String targetLabel) {
+        return mModuleTargets.entrySet().stream()
+                .filter(moduleTargets -> moduleTargets.getValue().contains(targetLabel))
+                .map(Map.Entry::getKey)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private void configure(String projectPath, Runnable configuration) {
+        if (mConfigured.add(projectPath)) {
+            configuration.run();
+        }
+    }
+
+    /*
+     * Computed once all the projects were evaluated, so the Gradle project dependencies are known. The targets of all
+     * the needed modules are registered at once, so a single aspect run covers them.
+     */
+    private void computeRequestedPaths() {
+        if (mRequestedPaths != null) {
+            return;
+        }
+        mRequestedPaths = new HashSet<>();
+        final Gradle gradle = mRootProject.getGradle();
+        final List<String> taskNames = gradle.getStartParameter().getTaskNames();
+        mAllRequested = taskNames.isEmpty();
+        final Project currentProject = findProject(gradle.getStartParameter().getCurrentDir());
+        for (int taskNameIndex = 0; taskNameIndex < taskNames.size(); taskNameIndex++) {
+            final String taskName = taskNames.get(taskNameIndex);
+            if (taskName.startsWith("-")) {
+                //a task option, like `--tests`, which may be followed by its value.
+                if (OPTIONS_WITH_VALUE.contains(taskName)) {
+                    taskNameIndex++;
+                }
+                continue;
+            }
+            final int projectPathEnd = taskName.lastIndexOf(':');
+            if (projectPathEnd < 0) {
+                //an unqualified task name runs in the current project, and all its sub-projects.
+                if (currentProject == null || currentProject == mRootProject) {
+                    mAllRequested = true;
+                } else {
+                    mRequestedPaths.add(currentProject.getPath());
+                    currentProject.getSubprojects().forEach(subproject -> mRequestedPaths.add(subproject.getPath()));
+                }
+            } else {
+                final String projectPath = projectPathEnd == 0 ? ":" : taskName.substring(0, projectPathEnd);
+                if (mRootProject.findProject(projectPath) == null) {
+                    //an abbreviated, or relative, path. Not worth resolving here.
+                    mAllRequested = true;
+                } else {
+                    mRequestedPaths.add(projectPath);
+                }
+            }
+        }
+        addProjectDependencies();
+
+        mModuleTargets.forEach((projectPath, targetLabels) -> {
+            if (mAllRequested || mRequestedPaths.contains(projectPath)) {
+                mAspectService.registerTargets(targetLabels);
+            }
+        });
+    }
+
+    private void addProjectDependencies() {
+        final List<String> toVisit = new ArrayList<>(mRequestedPaths);
+        while (!toVisit.isEmpty()) {
+            final Project project = mRootProject.findProject(toVisit.remove(toVisit.size() - 1));
+            if (project == null) {
+                continue;
+            }
+            project.getConfigurations().forEach(configuration -> configuration.getDependencies().withType(ProjectDependency.class)
+                    .forEach(projectDependency -> {
+                        final String dependencyPath = getDependencyPath(projectDependency);
+                        if (mRequestedPaths.add(dependencyPath)) {
+                            toVisit.add(dependencyPath);
+                        }
+                    }));
+        }
+    }
+
+    /*
+     * The path of the project, which is then resolved by mRootProject#findProject. Newer Gradle versions report it
+     * without handing out the dependency's Project. This tree compiles against an older Gradle, hence the reflection.
+     */
+    private static String getDependencyPath(ProjectDependency projectDependency) {
+        if (GradleVersion.current().compareTo(DEPENDENCY_PATH_GRADLE_VERSION) >= 0) {
+            try {
+                return (String) ProjectDependency.class.getMethod("getPath").invoke(projectDependency);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to get the project path of the dependency " + projectDependency, e);
+            }
+        }
+        return projectDependency.getDependencyProject().getPath();
+    }
+
+    @javax.annotation.Nullable
+    private Project findProject(@javax.annotation.Nullable File currentDir) {
+        if (currentDir == null) {
+            return null;
+        }
+        return mRootProject.getAllprojects().stream()
+                .filter(project -> project.getProjectDir().getAbsoluteFile().equals(currentDir.getAbsoluteFile()))
+                .findFirst()
+                .orElse(null);
+    }
+}
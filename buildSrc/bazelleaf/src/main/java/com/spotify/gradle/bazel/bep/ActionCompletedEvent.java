@@ -0,0 +1,42 @@
+package com.spotify.gradle.bazel.bep;
+
+/**
+ * An action failed. Bazel reports successful actions only with `--build_event_publish_all_actions`, which the plugin
+ * does not pass (it makes the events file about as large as the action graph), so these events tell which action of a
+ * target failed, rather than where the build's time went.
+ */
+public class ActionCompletedEvent extends BuildEvent {
+
+    /**
+     * The action's mnemonic, for example `Javac`.
+     */
+    public final String type;
+    public final boolean success;
+    public final int exitCode;
+    /**
+     * The action's start and end times, in epoch milliseconds, or -1 if this Bazel version does not report them.
+     */
+    public final long startTimeMillis;
+    public final long endTimeMillis;
+
+    ActionCompletedEvent(String label, String type, boolean success, int exitCode, long startTimeMillis, long endTimeMillis) {
+        super(label);
+        this.type = type;
+        this.success = success;
+        this.exitCode = exitCode;
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+    }
+
+    /**
+     * @return the action's duration, or -1 if it is not known.
+     */
+    public long getDurationMillis() {
+        return startTimeMillis >= 0 && endTimeMillis >= 0 ? endTimeMillis - startTimeMillis : -1;
+    }
+
+    @Override
+    public void dispatch(BuildEventListener listener) {
+        listener.onActionCompleted(this);
+    }
+}
@@ -0,0 +1,22 @@
+package com.spotify.gradle.bazel.bep;
+
+/**
+ * A typed event from Bazel's Build Event Protocol. Only the events, and fields, that the plugin uses are parsed.
+ */
+public abstract class BuildEvent {
+
+    /**
+     * The label of the target this event is about, or null for build-wide events.
+     */
+    @javax.annotation.Nullable
+    public final String label;
+
+    BuildEvent(@javax.annotation.Nullable String label) {
+        this.label = label;
+    }
+
+    /**
+     * Hands this event to the listener's method for its type.
+     */
+    public abstract void dispatch(BuildEventListener listener);
+}
@@ -0,0 +1,108 @@
+package com.spotify.gradle.bazel.bep;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tails a `--build_event_json_file` while Bazel writes it, and hands every event to a {@link BuildEventParser}, so
+ * listeners learn about completed targets and tests while the build is still running.
+ * <p>
+ * Only complete lines are parsed: a line Bazel is in the middle of writing is held back until its newline arrives.
+ */
+public class BuildEventFileReader implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildEventFileReader.class);
+    private static final long POLL_INTERVAL_MS = 50;
+    private static final long CLOSE_TIMEOUT_MS = 10_000;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final File mEventsFile;
+    private final BuildEventParser mParser;
+    private final CountDownLatch mProcessEnded = new CountDownLatch(1);
+    private final Thread mReaderThread;
+
+    public BuildEventFileReader(File eventsFile, BuildEventListener listener) {
+        mEventsFile = eventsFile;
+        mParser = new BuildEventParser(listener);
+        mReaderThread = new Thread(this::read, "bazel-leaf-bep-reader");
+        mReaderThread.setDaemon(true);
+    }
+
+    public void start() {
+        mReaderThread.start();
+    }
+
+    /**
+     * Call once the Bazel process exited: reads whatever is left in the file, and waits for the reader to finish.
+     */
+    @Override
+    public void close() {
+        mProcessEnded.countDown();
+        try {
+            mReaderThread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            mReaderThread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void read() {
+        try {
+            //Bazel creates the file only after it started executing the command.
+            while (!mEventsFile.isFile()) {
+                if (mProcessEnded.await(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS) && !mEventsFile.isFile()) {
+                    return;
+                }
+            }
+
+            try (InputStream inputStream = new FileInputStream(mEventsFile)) {
+                final byte[] chunk = new byte[CHUNK_SIZE];
+                final ByteArrayOutputStream currentLine = new ByteArrayOutputStream();
+                boolean drainedAfterProcessEnded = false;
+                while (!mParser.isLastMessageSeen()) {
+                    final int read = inputStream.read(chunk);
+                    if (read > 0) {
+                        for (int i = 0; i < read; i++) {
+                            if (chunk[i] == '\n') {
+                                parseLine(new String(currentLine.toByteArray(), StandardCharsets.UTF_8));
+                                currentLine.reset();
+                            } else {
+                                currentLine.write(chunk[i]);
+                            }
+                        }
+                    } else if (mProcessEnded.getCount() == 0) {
+                        //one more read after the process ended, to make sure nothing it wrote is missed.
+                        if (drainedAfterProcessEnded) {
+                            break;
+                        }
+                        drainedAfterProcessEnded = true;
+                    } else {
+                        mProcessEnded.await(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read build events from {}. Error: {}", mEventsFile, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void parseLine(String line) {
+        try {
+            mParser.parse(line);
+        } catch (RuntimeException e) {
+            //a listener, or an unexpected event, should not stop the rest of the events.
+            LOGGER.warn("Failed to handle build event '{}'. Error: {}", line, e.getMessage());
+        }
+    }
+}
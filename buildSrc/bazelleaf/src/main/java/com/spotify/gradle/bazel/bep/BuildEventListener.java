@@ -0,0 +1,23 @@
+package com.spotify.gradle.bazel.bep;
+
+/**
+ * Receives typed build events while Bazel is still running. Events are delivered on a background thread, in the
+ * order Bazel wrote them.
+ */
+public interface BuildEventListener {
+
+    default void onTargetCompleted(TargetCompletedEvent event) {
+    }
+
+    default void onTestResult(TestResultEvent event) {
+    }
+
+    default void onTestSummary(TestSummaryEvent event) {
+    }
+
+    default void onActionCompleted(ActionCompletedEvent event) {
+    }
+
+    default void onBuildFinished(BuildFinishedEvent event) {
+    }
+}
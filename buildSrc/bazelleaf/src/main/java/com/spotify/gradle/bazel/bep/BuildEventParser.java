@@ -0,0 +1,190 @@
+package com.spotify.gradle.bazel.bep;
+
+import java.io.File;
+import java.net.URI;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import groovy.json.JsonSlurper;
+
+/**
+ * Parses the lines of a `--build_event_json_file` (one JSON object per line) into typed {@link BuildEvent}s.
+ * <p>
+ * Note that the JSON mapping omits fields with default values (so a missing `success` means false), and writes 64-bit
+ * numbers as strings.
+ */
+public class BuildEventParser {
+
+    private final BuildEventListener mListener;
+    private final Map<String, NamedSetOfFiles> mNamedSets = new HashMap<>();
+    private boolean mLastMessageSeen;
+
+    public BuildEventParser(BuildEventListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * @return true once Bazel wrote its last event.
+     */
+    public boolean isLastMessageSeen() {
+        return mLastMessageSeen;
+    }
+
+    public void parse(String jsonLine) {
+        if (jsonLine.trim().isEmpty()) {
+            return;
+        }
+        final Map<?, ?> event = (Map<?, ?>) new JsonSlurper().parseText(jsonLine);
+        if (Boolean.TRUE.equals(event.get("lastMessage"))) {
+            mLastMessageSeen = true;
+        }
+
+        final BuildEvent buildEvent = toBuildEvent(map(event.get("id")), event);
+        if (buildEvent != null) {
+            buildEvent.dispatch(mListener);
+        }
+    }
+
+    @javax.annotation.Nullable
+    private BuildEvent toBuildEvent(Map<?, ?> id, Map<?, ?> event) {
+        if (id.containsKey("namedSet")) {
+            final Map<?, ?> namedSet = map(event.get("namedSetOfFiles"));
+            final List<String> childIds = new ArrayList<>();
+            list(namedSet.get("fileSets")).forEach(fileSet -> childIds.add(string(map(fileSet).get("id"))));
+            mNamedSets.put(string(map(id.get("namedSet")).get("id")), new NamedSetOfFiles(files(namedSet.get("files")), childIds));
+            return null;
+        } else if (event.containsKey("aborted")) {
+            //a target that was not built, since the build stopped before it (or it failed to configure).
+            final Object targetId = id.containsKey("targetCompleted") ? id.get("targetCompleted") : id.get("targetConfigured");
+            final String label = string(map(targetId).get("label"));
+            if (label.isEmpty()) {
+                return null;
+            }
+            final Map<?, ?> aborted = map(event.get("aborted"));
+            final String description = string(aborted.get("description"));
+            final String reason = string(aborted.get("reason"));
+            return new TargetCompletedEvent(label, false, Collections.emptyList(), description.isEmpty() ? reason : reason + ": " + description);
+        } else if (id.containsKey("targetCompleted")) {
+            final String label = string(map(id.get("targetCompleted")).get("label"));
+            final Map<?, ?> completed = map(event.get("completed"));
+            return new TargetCompletedEvent(label, Boolean.TRUE.equals(completed.get("success")), getTargetOutputs(completed));
+        } else if (id.containsKey("testResult")) {
+            final Map<?, ?> testResult = map(event.get("testResult"));
+            final Map<String, File> outputs = new LinkedHashMap<>();
+            list(testResult.get("testActionOutput")).forEach(output -> {
+                final File file = file(map(output).get("uri"));
+                if (file != null) {
+                    outputs.put(string(map(output).get("name")), file);
+                }
+            });
+            final boolean cached = Boolean.TRUE.equals(testResult.get("cachedLocally"))
+                    || Boolean.TRUE.equals(map(testResult.get("executionInfo")).get("cachedRemotely"));
+            return new TestResultEvent(string(map(id.get("testResult")).get("label")), string(testResult.get("status")),
+                    number(testResult.get("testAttemptDurationMillis")), cached, outputs);
+        } else if (id.containsKey("testSummary")) {
+            final Map<?, ?> testSummary = map(event.get("testSummary"));
+            return new TestSummaryEvent(string(map(id.get("testSummary")).get("label")), string(testSummary.get("overallStatus")),
+                    (int) number(testSummary.get("totalRunCount")), (int) number(testSummary.get("totalNumCached")),
+                    files(testSummary.get("passed")), files(testSummary.get("failed")));
+        } else if (id.containsKey("actionCompleted")) {
+            final Map<?, ?> action = map(event.get("action"));
+            return new ActionCompletedEvent(string(map(id.get("actionCompleted")).get("label")), string(action.get("type")),
+                    Boolean.TRUE.equals(action.get("success")), (int) number(action.get("exitCode")),
+                    timestamp(action.get("startTime")), timestamp(action.get("endTime")));
+        } else if (id.containsKey("buildFinished")) {
+            final Map<?, ?> finished = map(event.get("finished"));
+            final String exitCodeName = string(map(finished.get("exitCode")).get("name"));
+            return new BuildFinishedEvent(Boolean.TRUE.equals(finished.get("overallSuccess")) || "SUCCESS".equals(exitCodeName), exitCodeName);
+        } else {
+            return null;
+        }
+    }
+
+    private List<File> getTargetOutputs(Map<?, ?> completed) {
+        final List<File> importantOutputs = files(completed.get("importantOutput"));
+        if (!importantOutputs.isEmpty()) {
+            return importantOutputs;
+        }
+
+        //older versions only point at named sets of files, which were reported earlier.
+        final List<File> outputs = new ArrayList<>();
+        final Set<String> visitedSets = new HashSet<>();
+        list(completed.get("outputGroup")).stream()
+                .map(BuildEventParser::map)
+                .filter(outputGroup -> "default".equals(outputGroup.get("name")))
+                .flatMap(outputGroup -> list(outputGroup.get("fileSets")).stream())
+                .forEach(fileSet -> collectNamedSet(string(map(fileSet).get("id")), visitedSets, outputs));
+        return outputs;
+    }
+
+    private void collectNamedSet(String namedSetId, Set<String> visitedSets, List<File> outputs) {
+        final NamedSetOfFiles namedSet = mNamedSets.get(namedSetId);
+        if (namedSet == null || !visitedSets.add(namedSetId)) {
+            return;
+        }
+        outputs.addAll(namedSet.files);
+        namedSet.childIds.forEach(childId -> collectNamedSet(childId, visitedSets, outputs));
+    }
+
+    private static Map<?, ?> map(Object value) {
+        return value instanceof Map ? (Map<?, ?>) value : Collections.emptyMap();
+    }
+
+    private static List<?> list(Object value) {
+        return value instanceof List ? (List<?>) value : Collections.emptyList();
+    }
+
+    private static String string(Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static long number(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return value == null || value.toString().isEmpty() ? 0 : Long.parseLong(value.toString());
+    }
+
+    private static long timestamp(Object value) {
+        return value == null ? -1 : Instant.parse(value.toString()).toEpochMilli();
+    }
+
+    private static List<File> files(Object value) {
+        final List<File> files = new ArrayList<>();
+        list(value).forEach(file -> {
+            final File localFile = file(map(file).get("uri"));
+            if (localFile != null) {
+                files.add(localFile);
+            }
+        });
+        return files;
+    }
+
+    /**
+     * @return the local file of a `file://` URI, or null for remote files (for example, `bytestream://`).
+     */
+    @javax.annotation.Nullable
+    private static File file(Object uri) {
+        if (uri == null || !uri.toString().startsWith("file:")) {
+            return null;
+        }
+        return new File(URI.create(uri.toString()));
+    }
+
+    private static class NamedSetOfFiles {
+        final List<File> files;
+        final List<String> childIds;
+
+        NamedSetOfFiles(List<File> files, List<String> childIds) {
+            this.files = files;
+            this.childIds = childIds;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.spotify.gradle.bazel.bep;
+
+/**
+ * The build (or test) command finished.
+ */
+public class BuildFinishedEvent extends BuildEvent {
+
+    public final boolean success;
+    /**
+     * For example, SUCCESS, BUILD_FAILURE or TESTS_FAILED.
+     */
+    public final String exitCodeName;
+
+    BuildFinishedEvent(boolean success, String exitCodeName) {
+        super(null);
+        this.success = success;
+        this.exitCodeName = exitCodeName;
+    }
+
+    @Override
+    public void dispatch(BuildEventListener listener) {
+        listener.onBuildFinished(this);
+    }
+}
@@ -0,0 +1,42 @@
+package com.spotify.gradle.bazel.bep;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Hands every build event to several listeners.
+ */
+public class CompositeBuildEventListener implements BuildEventListener {
+
+    private final List<BuildEventListener> mListeners;
+
+    public CompositeBuildEventListener(Collection<BuildEventListener> listeners) {
+        mListeners = new ArrayList<>(listeners);
+    }
+
+    @Override
+    public void onTargetCompleted(TargetCompletedEvent event) {
+        mListeners.forEach(listener -> listener.onTargetCompleted(event));
+    }
+
+    @Override
+    public void onTestResult(TestResultEvent event) {
+        mListeners.forEach(listener -> listener.onTestResult(event));
+    }
+
+    @Override
+    public void onTestSummary(TestSummaryEvent event) {
+        mListeners.forEach(listener -> listener.onTestSummary(event));
+    }
+
+    @Override
+    public void onActionCompleted(ActionCompletedEvent event) {
+        mListeners.forEach(listener -> listener.onActionCompleted(event));
+    }
+
+    @Override
+    public void onBuildFinished(BuildFinishedEvent event) {
+        mListeners.forEach(listener -> listener.onBuildFinished(event));
+    }
+}
@@ -0,0 +1,38 @@
+package com.spotify.gradle.bazel.bep;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * A target was built (or failed to build, or was skipped).
+ */
+public class TargetCompletedEvent extends BuildEvent {
+
+    public final boolean success;
+    /**
+     * The exact files the target produced in its default output group.
+     */
+    public final List<File> outputs;
+    /**
+     * Why Bazel did not build the target (for example, `SKIPPED: ...` when another target failed without
+     * `--keep_going`), or null if Bazel did build it.
+     */
+    @javax.annotation.Nullable
+    public final String abortReason;
+
+    TargetCompletedEvent(String label, boolean success, List<File> outputs) {
+        this(label, success, outputs, null);
+    }
+
+    TargetCompletedEvent(String label, boolean success, List<File> outputs, @javax.annotation.Nullable String abortReason) {
+        super(label);
+        this.success = success;
+        this.outputs = outputs;
+        this.abortReason = abortReason;
+    }
+
+    @Override
+    public void dispatch(BuildEventListener listener) {
+        listener.onTargetCompleted(this);
+    }
+}
@@ -0,0 +1,37 @@
+package com.spotify.gradle.bazel.bep;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * A single attempt of a test target (one run, of one shard) finished.
+ */
+public class TestResultEvent extends BuildEvent {
+
+    /**
+     * For example, PASSED, FAILED or FLAKY.
+     */
+    public final String status;
+    public final long durationMillis;
+    /**
+     * True if the result was taken from a cache (local or remote) rather than executing the test.
+     */
+    public final boolean cached;
+    /**
+     * The test's outputs, by name (for example, `test.log` and `test.xml`).
+     */
+    public final Map<String, File> outputs;
+
+    TestResultEvent(String label, String status, long durationMillis, boolean cached, Map<String, File> outputs) {
+        super(label);
+        this.status = status;
+        this.durationMillis = durationMillis;
+        this.cached = cached;
+        this.outputs = outputs;
+    }
+
+    @Override
+    public void dispatch(BuildEventListener listener) {
+        listener.onTestResult(this);
+    }
+}
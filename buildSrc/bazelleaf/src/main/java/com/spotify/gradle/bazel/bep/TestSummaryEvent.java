@@ -0,0 +1,37 @@
+package com.spotify.gradle.bazel.bep;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * All the attempts of a test target finished.
+ */
+public class TestSummaryEvent extends BuildEvent {
+
+    /**
+     * For example, PASSED, FAILED or FLAKY.
+     */
+    public final String overallStatus;
+    public final int totalRunCount;
+    public final int cachedRunCount;
+    public final List<File> passedLogs;
+    public final List<File> failedLogs;
+
+    TestSummaryEvent(String label, String overallStatus, int totalRunCount, int cachedRunCount, List<File> passedLogs, List<File> failedLogs) {
+        super(label);
+        this.overallStatus = overallStatus;
+        this.totalRunCount = totalRunCount;
+        this.cachedRunCount = cachedRunCount;
+        this.passedLogs = passedLogs;
+        this.failedLogs = failedLogs;
+    }
+
+    public boolean isPassed() {
+        return "PASSED".equals(overallStatus) || "FLAKY".equals(overallStatus);
+    }
+
+    @Override
+    public void dispatch(BuildEventListener listener) {
+        listener.onTestSummary(this);
+    }
+}
@@ -1,6 +1,6 @@
 package com.spotify.gradle.bazel.strategies;
 
-import com.spotify.gradle.bazel.AspectRunner;
+import com.spotify.gradle.bazel.BazelAspectService;
 import com.spotify.gradle.bazel.BazelLeafConfig;
 import com.spotify.gradle.bazel.BazelPublishArtifact;
 import com.spotify.gradle.bazel.tasks.BazelBuildTask;
@@ -25,15 +25,17 @@ class AndroidLibraryStrategy extends PlainBuildStrategy {
         bazelBuildTask.setBazelConfig(new BazelLeafConfig.Decorated(
                 mConfig.bazelBin,
                 mConfig.targetPath, mConfig.targetName + ".aar", mConfig.testTargetName,
-                mConfig.workspaceRootFolder, mConfig.buildOutputDir));
+                mConfig.workspaceRootFolder, mConfig.buildOutputDir,
+                mConfig.diskCacheFolder, mConfig.diskCacheMaxSizeBytes,
+                mConfig.repositoryCacheFolder, mConfig.startupOptions, mConfig.buildFlags));
         return bazelBuildTask;
     }
 
     @Override
-    public List<BazelPublishArtifact> getBazelArtifacts(AspectRunner aspectRunner, Project project, Task bazelExecTask) {
+    public List<BazelPublishArtifact> getBazelArtifacts(BazelAspectService aspectService, Project project, Task bazelExecTask) {
         //since we are using the implicit output `aar` we know exactly what output to expect.
         //also, Bazel will not report the AAR output anyway.
-        final File outputArtifactFolder = super.getBazelArtifacts(aspectRunner, project, bazelExecTask).get(0).getFile().getParentFile();
+        final File outputArtifactFolder = super.getBazelArtifacts(aspectService, project, bazelExecTask).get(0).getFile().getParentFile();
         final File aarOutputFile = new File(outputArtifactFolder, mConfig.targetName + ".aar");
         return Collections.singletonList(new BazelPublishArtifact(bazelExecTask, aarOutputFile));
     }
@@ -1,6 +1,6 @@
 package com.spotify.gradle.bazel.strategies;
 
-import com.spotify.gradle.bazel.AspectRunner;
+import com.spotify.gradle.bazel.BazelAspectService;
 import com.spotify.gradle.bazel.BazelLeafConfig;
 import com.spotify.gradle.bazel.BazelPublishArtifact;
 import com.spotify.gradle.bazel.tasks.BazelTestTask;
@@ -27,7 +27,7 @@ class JavaTestStrategy implements Strategy {
     }
 
     @Override
-    public List<BazelPublishArtifact> getBazelArtifacts(AspectRunner aspectRunner, Project project, Task bazelExecTask) {
+    public List<BazelPublishArtifact> getBazelArtifacts(BazelAspectService aspectService, Project project, Task bazelExecTask) {
         //no outputs here.
         return Collections.emptyList();
     }
@@ -1,6 +1,6 @@
 package com.spotify.gradle.bazel.strategies;
 
-import com.spotify.gradle.bazel.AspectRunner;
+import com.spotify.gradle.bazel.BazelAspectService;
 import com.spotify.gradle.bazel.BazelLeafConfig;
 import com.spotify.gradle.bazel.BazelPublishArtifact;
 import com.spotify.gradle.bazel.tasks.BazelBuildTask;
@@ -33,8 +33,8 @@ class PlainBuildStrategy implements Strategy {
     }
 
     @Override
-    public List<BazelPublishArtifact> getBazelArtifacts(AspectRunner aspectRunner, Project project, Task bazelExecTask) {
-        return aspectRunner.getAspectResult("get_rule_outs.bzl", mConfig.targetName).stream()
+    public List<BazelPublishArtifact> getBazelArtifacts(BazelAspectService aspectService, Project project, Task bazelExecTask) {
+        return aspectService.getRuleOutputs(mConfig.getTargetLabel()).stream()
                 .map(this::generateFileForOutput)
                 .map(artifactFile -> new BazelPublishArtifact(bazelExecTask, artifactFile))
                 .collect(Collectors.toList());
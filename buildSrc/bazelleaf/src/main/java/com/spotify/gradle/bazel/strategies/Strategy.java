@@ -1,6 +1,6 @@
 package com.spotify.gradle.bazel.strategies;
 
-import com.spotify.gradle.bazel.AspectRunner;
+import com.spotify.gradle.bazel.BazelAspectService;
 import com.spotify.gradle.bazel.BazelPublishArtifact;
 
 import org.gradle.api.Project;
@@ -12,7 +12,7 @@ public interface Strategy {
     Task createBazelExecTask(Project project);
 
     List<BazelPublishArtifact> getBazelArtifacts(
-            AspectRunner aspectRunner,
+            BazelAspectService aspectService,
             Project project,
             Task bazelExecTask);
 }
@@ -2,15 +2,19 @@ package com.spotify.gradle.bazel.tasks;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.spotify.gradle.bazel.BazelLeafConfig;
+import com.spotify.gradle.bazel.bep.BuildEventListener;
+import com.spotify.gradle.bazel.bep.TargetCompletedEvent;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
 
 import org.gradle.api.plugins.BasePlugin;
+import org.gradle.api.tasks.CacheableTask;
 
 import javax.inject.Inject;
 
 /**
  * A variant of {@link BazelExecTaskBase} that performs a `bazel build` action.
  */
+@CacheableTask
 public class BazelBuildTask extends BazelExecTaskBase {
 
     @Inject
@@ -27,9 +31,28 @@ public class BazelBuildTask extends BazelExecTaskBase {
         return mBazelExecHelper.createBazelRun(true, config, config.targetName, "build");
     }
 
+    @Override
+    protected String getCoalescedCommand() {
+        return "build";
+    }
+
+    @Override
+    protected BuildEventListener createBuildEventListener() {
+        return new BuildEventListener() {
+            @Override
+            public void onTargetCompleted(TargetCompletedEvent event) {
+                if (event.success && mConfig.getTargetLabel().equals(event.label)) {
+                    getLogger().info("Bazel target {} produced {}", event.label, event.outputs);
+                }
+            }
+        };
+    }
+
     @Override
     public void setBazelConfig(BazelLeafConfig.Decorated bazelConfig) {
         super.setBazelConfig(bazelConfig);
+        //the target is part of the task's cache key, since two modules may have identical files.
+        getInputs().property("bazelTarget", bazelConfig.getTargetLabel());
         setGroup(BasePlugin.BUILD_GROUP);
         setDescription("Compiles Bazel target " + bazelConfig.targetPath + ':' + bazelConfig.targetName);
     }
@@ -1,12 +1,15 @@
 package com.spotify.gradle.bazel.tasks;
 
 import com.spotify.gradle.bazel.BazelLeafConfig;
+import com.spotify.gradle.bazel.bep.BuildEventListener;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.tasks.TaskAction;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * A base class that execute the Bazel binary.
@@ -17,17 +20,40 @@ public abstract class BazelExecTaskBase extends DefaultTask implements BazelConf
 
     protected final BazelExecHelper mBazelExecHelper;
 
+    //resolved while the task is configured, rather than from the project while it runs.
+    private final File mLogFile;
+    private final boolean mParallelProjectExecution;
+    private final BazelInvocationScheduler mScheduler;
+
     protected BazelExecTaskBase() {
         this(new BazelExecHelper());
     }
 
     protected BazelExecTaskBase(BazelExecHelper bazelExecHelper) {
         mBazelExecHelper = bazelExecHelper;
+        final String logName = getPath().substring(1).replace(':', '_');
+        mLogFile = new File(getProject().getRootProject().getBuildDir(), "bazel-leaf/logs/" + logName + ".log");
+        mParallelProjectExecution = getProject().getGradle().getStartParameter().isParallelProjectExecutionEnabled();
+        mScheduler = BazelInvocationScheduler.obtain(getProject(), bazelExecHelper);
     }
 
     @TaskAction
     public void bazelExec() {
+        final String coalescedCommand = getCoalescedCommand();
+        if (coalescedCommand != null) {
+            //a planned target that is not chained to any other planned target, runs (and reports) on its own.
+            if (mParallelProjectExecution || mScheduler.hasCoalescingPartners(coalescedCommand, getCoalescedTargetLabel())) {
+                runCoalesced(coalescedCommand);
+                return;
+            }
+        }
+
         BazelExecHelper.BazelExec bazelExec = createBazelExec(mConfig);
+        bazelExec.setLogFile(getLogFile());
+        final BuildEventListener buildEventListener = createBuildEventListener();
+        if (buildEventListener != null) {
+            bazelExec.addBuildEventListener(buildEventListener);
+        }
         try {
             onSuccessfulRun(bazelExec.start());
         } catch (IOException | InterruptedException e) {
@@ -35,11 +61,63 @@ public abstract class BazelExecTaskBase extends DefaultTask implements BazelConf
         }
     }
 
+    private void runCoalesced(String bazelCommand) {
+        try {
+            mScheduler.submit(mConfig, bazelCommand, getCoalescedTargetLabel(), createBuildEventListener()).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to execute task using Bazel", e.getCause());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Failed to execute task using Bazel", e);
+        }
+    }
+
+    /**
+     * Override to let this task's command be coalesced with the same command of other tasks that run at the same time
+     * (with `--parallel`), or that were planned together with other targets, into a single Bazel invocation. See
+     * {@link BazelInvocationScheduler}. A target with nothing to be coalesced with runs its own invocation. A coalesced run does not call {@link #onSuccessfulRun(BazelExecHelper.RunResult)}, since its result is shared.
+     *
+     * @return the Bazel command, or null if this task must run its own invocation.
+     */
+    @javax.annotation.Nullable
+    protected String getCoalescedCommand() {
+        return null;
+    }
+
+    /**
+     * The target this task submits to a coalesced invocation.
+     */
+    protected String getCoalescedTargetLabel() {
+        return mConfig.getTargetLabel();
+    }
+
     protected void onSuccessfulRun(BazelExecHelper.RunResult runResult) {
     }
 
+    /**
+     * Override to receive the run's build events (see {@link com.spotify.gradle.bazel.bep}) while Bazel is running.
+     * Events are delivered on a background thread.
+     */
+    @javax.annotation.Nullable
+    protected BuildEventListener createBuildEventListener() {
+        return null;
+    }
+
+    /**
+     * The full Bazel output of this task. For example, `build/bazel-leaf/logs/lib2_bazelBuild.log` in the root project.
+     */
+    protected File getLogFile() {
+        return mLogFile;
+    }
+
     protected abstract BazelExecHelper.BazelExec createBazelExec(BazelLeafConfig.Decorated config);
 
+    public BazelLeafConfig.Decorated getBazelConfig() {
+        return mConfig;
+    }
+
     @Override
     public void setBazelConfig(BazelLeafConfig.Decorated config) {
         mConfig = config;
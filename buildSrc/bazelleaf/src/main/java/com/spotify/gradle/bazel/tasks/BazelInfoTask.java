@@ -3,10 +3,13 @@ package com.spotify.gradle.bazel.tasks;
 import com.google.common.annotations.VisibleForTesting;
 import com.spotify.gradle.bazel.BazelLeafConfig;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
+import com.spotify.gradle.bazel.utils.BazelServerRecord;
 import com.spotify.gradle.bazel.utils.LoggerWithFlush;
 
 import org.gradle.wrapper.Logger;
 
+import java.io.File;
+
 import javax.inject.Inject;
 
 /**
@@ -14,6 +17,9 @@ import javax.inject.Inject;
  */
 public class BazelInfoTask extends BazelExecTaskBase {
     private static final Logger LOGGER = new LoggerWithFlush();
+    private static final String SERVER_PID_PREFIX = "server_pid:";
+
+    private final File mServerRecordFile = BazelServerRecord.getRecordFile(getProject().getRootProject().getBuildDir());
 
     @Inject
     public BazelInfoTask() {
@@ -33,12 +39,26 @@ public class BazelInfoTask extends BazelExecTaskBase {
     protected void onSuccessfulRun(BazelExecHelper.RunResult runResult) {
         super.onSuccessfulRun(runResult);
         runResult.getExecutionOutput().forEach(LOGGER::log);
+        runResult.getExecutionOutput().stream()
+                .filter(line -> line.startsWith(SERVER_PID_PREFIX))
+                .findFirst()
+                .ifPresent(line -> logServer(line.substring(SERVER_PID_PREFIX.length()).trim()));
+    }
+
+    private void logServer(String pid) {
+        final BazelServerRecord record = BazelServerRecord.read(mServerRecordFile);
+        if (record != null && record.pid.equals(pid)) {
+            LOGGER.log("bazel-leaf: the Bazel server (PID " + pid + ") is up for at least " + record.getUptime()
+                    + ", with the startup options " + record.startupOptions);
+        } else {
+            LOGGER.log("bazel-leaf: the Bazel server (PID " + pid + ") was not started by this build.");
+        }
     }
 
     @Override
     public void setBazelConfig(BazelLeafConfig.Decorated config) {
         super.setBazelConfig(config);
-        setDescription("Prints out information about Bazel workspace");
+        setDescription("Prints out information about Bazel workspace, and its server");
         setGroup("others");
     }
 }
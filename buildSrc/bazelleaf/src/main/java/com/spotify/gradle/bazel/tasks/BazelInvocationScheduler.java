@@ -0,0 +1,346 @@
+package com.spotify.gradle.bazel.tasks;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.spotify.gradle.bazel.BazelLeafConfig;
+import com.spotify.gradle.bazel.bep.ActionCompletedEvent;
+import com.spotify.gradle.bazel.bep.BuildEvent;
+import com.spotify.gradle.bazel.bep.BuildEventListener;
+import com.spotify.gradle.bazel.bep.TargetCompletedEvent;
+import com.spotify.gradle.bazel.bep.TestResultEvent;
+import com.spotify.gradle.bazel.bep.TestSummaryEvent;
+import com.spotify.gradle.bazel.utils.BazelExecHelper;
+import com.spotify.gradle.bazel.utils.RootScope;
+
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Coalesces the Bazel commands of several tasks into a single Bazel invocation.
+ * <p>
+ * The Bazel server runs one command at a time, so tasks running in parallel would otherwise wait on each other's
+ * `Another command is running` lock, and pay the analysis overhead once per module. Instead, targets submitted within a
+ * short window are handled by one multi-target invocation. Targets can also be planned up front (see
+ * {@link #planBatch(String, String, List)} and {@link #planChained(String, String, Collection)}), in which case the
+ * first submission runs all the targets planned with it, together with any other target submitted in its window.
+ * <p>
+ * Each submission completes as soon as Bazel reported its own target (through the Build Event Protocol), not when the
+ * whole invocation ends, and its listener receives only the events of its own target, including the ones reported
+ * before it was submitted.
+ * <p>
+ * Invocations run one after the other, on a thread that exists only while there are submissions.
+ */
+public class BazelInvocationScheduler {
+
+    static final long COALESCING_WINDOW_MS = 200;
+    //a related label shared by all the targets of a batch. Not a valid Bazel label.
+    private static final String WHOLE_BATCH = "";
+
+    private static final Logger LOGGER = Logging.getLogger(BazelInvocationScheduler.class);
+
+    private final BazelExecHelper mBazelExecHelper;
+    private final File mLogsFolder;
+    private final long mCoalescingWindowMs;
+    private final List<Invocation> mQueuedInvocations = new ArrayList<>();
+    private final Map<String, TargetRun> mTargetRuns = new HashMap<>();
+    private final Map<String, PlannedBatch> mPlannedBatches = new HashMap<>();
+    private boolean mSchedulerRunning;
+    private int mInvocationsCount;
+
+    public BazelInvocationScheduler(BazelExecHelper bazelExecHelper, File logsFolder) {
+        this(bazelExecHelper, logsFolder, COALESCING_WINDOW_MS);
+    }
+
+    @VisibleForTesting
+    BazelInvocationScheduler(BazelExecHelper bazelExecHelper, File logsFolder, long coalescingWindowMs) {
+        mBazelExecHelper = bazelExecHelper;
+        mLogsFolder = logsFolder;
+        mCoalescingWindowMs = coalescingWindowMs;
+    }
+
+    /**
+     * @return the scheduler shared by all the modules of the build.
+     */
+    public static BazelInvocationScheduler obtain(Project project, BazelExecHelper bazelExecHelper) {
+        return RootScope.get(project, BazelInvocationScheduler.class,
+                () -> new BazelInvocationScheduler(bazelExecHelper, new File(project.getRootProject().getBuildDir(), "bazel-leaf/logs")));
+    }
+
+    /**
+     * Adds a target to the planned batch of the given command. The first submission of any planned target will run
+     * all the planned targets (which were not handled yet) in one invocation, with the given arguments.
+     */
+    public void planBatch(String bazelCommand, String targetLabel, List<String> args) {
+        plan(bazelCommand, targetLabel, Collections.singleton(WHOLE_BATCH), args);
+    }
+
+    /**
+     * Adds a target to the planned chains of the given command. The first submission of a planned target will run,
+     * in one invocation, all the planned targets that are chained to it: targets that share any of the given
+     * related labels (usually, the target's rule and its transitive dependencies), directly or through other planned
+     * targets.
+     */
+    public void planChained(String bazelCommand, String targetLabel, Collection<String> relatedLabels) {
+        plan(bazelCommand, targetLabel, relatedLabels, Collections.emptyList());
+    }
+
+    private synchronized void plan(String bazelCommand, String targetLabel, Collection<String> relatedLabels, List<String> args) {
+        final PlannedBatch plannedBatch = mPlannedBatches.computeIfAbsent(bazelCommand, command -> new PlannedBatch());
+        plannedBatch.relatedLabels.put(targetLabel, new HashSet<>(relatedLabels));
+        plannedBatch.args = new ArrayList<>(args);
+    }
+
+    /**
+     * @return true if the target was planned (see {@link #planBatch(String, String, List)} and
+     * {@link #planChained(String, String, Collection)}).
+     */
+    public synchronized boolean isPlanned(String bazelCommand, String targetLabel) {
+        final PlannedBatch plannedBatch = mPlannedBatches.get(bazelCommand);
+        return plannedBatch != null && plannedBatch.relatedLabels.containsKey(targetLabel);
+    }
+
+    /**
+     * @return true if the target has something to be coalesced with: it is planned together with other planned targets
+     * (see {@link #planBatch(String, String, List)} and {@link #planChained(String, String, Collection)}), or it was
+     * already handled, or queued, as part of another target's invocation. A target without any, is better off running
+     * its own invocation.
+     */
+    public synchronized boolean hasCoalescingPartners(String bazelCommand, String targetLabel) {
+        if (mTargetRuns.containsKey(bazelCommand + ' ' + targetLabel)) {
+            return true;
+        }
+        final PlannedBatch plannedBatch = mPlannedBatches.get(bazelCommand);
+        return plannedBatch != null && plannedBatch.relatedLabels.containsKey(targetLabel)
+                && plannedBatch.findChain(targetLabel).size() > 1;
+    }
+
+    /**
+     * Submits a target to be handled by a coalesced Bazel command.
+     *
+     * @param listener will receive the build events of the target.
+     * @return a future that completes once Bazel reported the target, or fails if Bazel failed to handle it.
+     */
+    public synchronized CompletableFuture<Void> submit(BazelLeafConfig.Decorated config, String bazelCommand, String targetLabel,
+            @javax.annotation.Nullable BuildEventListener listener) {
+        TargetRun targetRun = mTargetRuns.get(bazelCommand + ' ' + targetLabel);
+        if (targetRun == null) {
+            final PlannedBatch plannedBatch = mPlannedBatches.get(bazelCommand);
+            if (plannedBatch != null && plannedBatch.relatedLabels.containsKey(targetLabel)) {
+                //the chain joins the targets (planned, or not) that were submitted in the same window, as long as they
+                //run with the same arguments.
+                final Invocation invocation = getCoalescingInvocation(config, bazelCommand, plannedBatch.args);
+                plannedBatch.takeChain(targetLabel).stream()
+                        .filter(plannedLabel -> !mTargetRuns.containsKey(bazelCommand + ' ' + plannedLabel))
+                        .forEach(plannedLabel -> addTargetRun(invocation, plannedLabel));
+            } else {
+                addTargetRun(getCoalescingInvocation(config, bazelCommand, Collections.emptyList()), targetLabel);
+            }
+            targetRun = mTargetRuns.get(bazelCommand + ' ' + targetLabel);
+        }
+
+        if (listener != null) {
+            targetRun.addListener(listener);
+        }
+        if (!mSchedulerRunning) {
+            mSchedulerRunning = true;
+            final Thread schedulerThread = new Thread(this::runQueuedInvocations, "bazel-leaf-scheduler");
+            schedulerThread.setDaemon(true);
+            schedulerThread.start();
+        }
+        return targetRun.completion;
+    }
+
+    /*
+     * The queued invocation that targets of the given command, and arguments, can still join. Or a new one.
+     */
+    private Invocation getCoalescingInvocation(BazelLeafConfig.Decorated config, String bazelCommand, List<String> args) {
+        return mQueuedInvocations.stream()
+                .filter(queued -> queued.bazelCommand.equals(bazelCommand) && queued.args.equals(args))
+                .findFirst()
+                .orElseGet(() -> {
+                    final Invocation coalescing = new Invocation(config, bazelCommand, args);
+                    mQueuedInvocations.add(coalescing);
+                    return coalescing;
+                });
+    }
+
+    private void addTargetRun(Invocation invocation, String targetLabel) {
+        final TargetRun targetRun = new TargetRun();
+        invocation.targetRuns.put(targetLabel, targetRun);
+        mTargetRuns.put(invocation.bazelCommand + ' ' + targetLabel, targetRun);
+    }
+
+    private void runQueuedInvocations() {
+        try {
+            //giving the other tasks that are starting right now a chance to join the first invocation.
+            Thread.sleep(mCoalescingWindowMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        while (true) {
+            final Invocation invocation;
+            final File logFile;
+            synchronized (this) {
+                if (mQueuedInvocations.isEmpty()) {
+                    mSchedulerRunning = false;
+                    return;
+                }
+                invocation = mQueuedInvocations.remove(0);
+                mInvocationsCount++;
+                logFile = new File(mLogsFolder, "coalesced-" + invocation.bazelCommand + "-" + mInvocationsCount + ".log");
+            }
+            invoke(invocation, logFile);
+        }
+    }
+
+    private void invoke(Invocation invocation, File logFile) {
+        final String bazelCommand = invocation.bazelCommand;
+        final List<String> targetLabels = new ArrayList<>(invocation.targetRuns.keySet());
+        LOGGER.lifecycle("Running bazel {} for {} target(s): {}", bazelCommand, targetLabels.size(), String.join(" ", targetLabels));
+
+        try {
+            final BazelExecHelper.BazelExec bazelExec = mBazelExecHelper.createBazelRun(true, invocation.config, targetLabels, bazelCommand,
+                    invocation.args.toArray(new String[0]));
+            bazelExec.setLogFile(logFile);
+            bazelExec.addBuildEventListener(new BuildEventListener() {
+                @Override
+                public void onTargetCompleted(TargetCompletedEvent event) {
+                    final TargetRun targetRun = invocation.onEvent(event);
+                    if (targetRun == null) {
+                        return;
+                    }
+                    if (event.abortReason != null) {
+                        //for example, skipped since another target of the invocation failed (without `--keep_going`).
+                        targetRun.completion.completeExceptionally(new IOException("Bazel did not build " + event.label
+                                + " (" + event.abortReason + "). The full output is at " + logFile.getAbsolutePath()));
+                    } else if (!event.success) {
+                        targetRun.completion.completeExceptionally(new IOException("Bazel failed to build " + event.label
+                                + ". The full output is at " + logFile.getAbsolutePath()));
+                    } else if (!"test".equals(bazelCommand)) {
+                        targetRun.completion.complete(null);
+                    }
+                }
+
+                @Override
+                public void onTestResult(TestResultEvent event) {
+                    invocation.onEvent(event);
+                }
+
+                @Override
+                public void onTestSummary(TestSummaryEvent event) {
+                    final TargetRun targetRun = invocation.onEvent(event);
+                    if (targetRun == null) {
+                        return;
+                    }
+                    if (event.isPassed()) {
+                        targetRun.completion.complete(null);
+                    } else {
+                        targetRun.completion.completeExceptionally(new IOException("Bazel test " + event.label + " " + event.overallStatus
+                                + ". The full output is at " + logFile.getAbsolutePath()));
+                    }
+                }
+
+                @Override
+                public void onActionCompleted(ActionCompletedEvent event) {
+                    invocation.onEvent(event);
+                }
+            });
+            bazelExec.start();
+            //targets that were not reported individually (for example, aliases), are done when the invocation is.
+            invocation.targetRuns.values().forEach(targetRun -> targetRun.completion.complete(null));
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            invocation.targetRuns.values().forEach(targetRun -> targetRun.completion.completeExceptionally(e));
+        }
+    }
+
+    private static class PlannedBatch {
+        final Map<String, Set<String>> relatedLabels = new LinkedHashMap<>();
+        List<String> args = Collections.emptyList();
+
+        /**
+         * Removes, and returns, the given target and all the planned targets chained to it.
+         */
+        Set<String> takeChain(String targetLabel) {
+            final Set<String> chain = findChain(targetLabel);
+            relatedLabels.keySet().removeAll(chain);
+            return chain;
+        }
+
+        /**
+         * @return the given planned target, and all the planned targets chained to it.
+         */
+        Set<String> findChain(String targetLabel) {
+            final Set<String> chain = new LinkedHashSet<>();
+            final Set<String> chainRelatedLabels = new HashSet<>(relatedLabels.get(targetLabel));
+            chain.add(targetLabel);
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                for (Map.Entry<String, Set<String>> plannedTarget : relatedLabels.entrySet()) {
+                    if (!chain.contains(plannedTarget.getKey()) && !Collections.disjoint(chainRelatedLabels, plannedTarget.getValue())) {
+                        chain.add(plannedTarget.getKey());
+                        chainRelatedLabels.addAll(plannedTarget.getValue());
+                        grew = true;
+                    }
+                }
+            }
+            return chain;
+        }
+    }
+
+    private static class Invocation {
+        final BazelLeafConfig.Decorated config;
+        final String bazelCommand;
+        final List<String> args;
+        final Map<String, TargetRun> targetRuns = new LinkedHashMap<>();
+
+        Invocation(BazelLeafConfig.Decorated config, String bazelCommand, List<String> args) {
+            this.config = config;
+            this.bazelCommand = bazelCommand;
+            this.args = args;
+        }
+
+        @javax.annotation.Nullable
+        TargetRun onEvent(BuildEvent event) {
+            final TargetRun targetRun = event.label == null ? null : targetRuns.get(event.label);
+            if (targetRun != null) {
+                targetRun.onEvent(event);
+            }
+            return targetRun;
+        }
+    }
+
+    /**
+     * The events of a single target in an invocation. Listeners that are added late get the events reported so far.
+     */
+    private static class TargetRun {
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+        private final List<BuildEvent> mEvents = new ArrayList<>();
+        private final List<BuildEventListener> mListeners = new ArrayList<>();
+
+        synchronized void addListener(BuildEventListener listener) {
+            mEvents.forEach(event -> event.dispatch(listener));
+            mListeners.add(listener);
+        }
+
+        synchronized void onEvent(BuildEvent event) {
+            mEvents.add(event);
+            mListeners.forEach(listener -> event.dispatch(listener));
+        }
+    }
+}
@@ -2,28 +2,32 @@ package com.spotify.gradle.bazel.tasks;
 
 import org.gradle.api.DefaultTask;
 import org.gradle.api.Task;
+import org.gradle.api.file.FileCollection;
 import org.gradle.api.tasks.TaskAction;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * A {@link Task} that deletes all the outputs of the given task.
+ * A {@link Task} that deletes all the outputs of the given tasks.
+ * <p>
+ * It keeps the outputs' file collections, which are only resolved when it runs, rather than the tasks themselves, and
+ * declares them as the files it destroys.
  */
 public class BazelTargetCleanTask extends DefaultTask {
 
-    private final Set<Task> mTargetTasks = new HashSet<>();
+    private final List<FileCollection> mTargetOutputs = new ArrayList<>();
 
     @TaskAction
     public void deleteOutputs() throws IOException {
-        if (mTargetTasks.isEmpty()) {
+        if (mTargetOutputs.isEmpty()) {
             throw new IllegalArgumentException("addTargetTask was not called for this clean task");
         }
 
-        for (Task targetTask : mTargetTasks) {
-            for (File outputFile : targetTask.getOutputs().getFiles()) {
+        for (FileCollection targetOutputs : mTargetOutputs) {
+            for (File outputFile : targetOutputs) {
                 if (outputFile.exists() && !outputFile.delete()) {
                     throw new IOException("Failed to delete Bazel output " + outputFile.getAbsolutePath());
                 }
@@ -32,6 +36,11 @@ public class BazelTargetCleanTask extends DefaultTask {
     }
 
     public void addTargetTask(Task targetTask) {
-        mTargetTasks.add(targetTask);
+        addTargetOutputs(targetTask.getOutputs().getFiles());
+    }
+
+    public void addTargetOutputs(FileCollection targetOutputs) {
+        mTargetOutputs.add(targetOutputs);
+        getDestroyables().register(targetOutputs);
     }
 }
@@ -2,11 +2,17 @@ package com.spotify.gradle.bazel.tasks;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.spotify.gradle.bazel.BazelLeafConfig;
+import com.spotify.gradle.bazel.bep.BuildEventListener;
+import com.spotify.gradle.bazel.bep.TestResultEvent;
+import com.spotify.gradle.bazel.bep.TestSummaryEvent;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
 
+import org.gradle.api.tasks.CacheableTask;
+
 /**
  * A variant of {@link BazelExecTaskBase} that performs a `bazel test` action.
  */
+@CacheableTask
 public class BazelTestTask extends BazelExecTaskBase {
 
     public BazelTestTask() {
@@ -22,9 +28,36 @@ public class BazelTestTask extends BazelExecTaskBase {
         return mBazelExecHelper.createBazelRun(true, config, config.testTargetName, "test");
     }
 
+    @Override
+    protected String getCoalescedCommand() {
+        return "test";
+    }
+
+    @Override
+    protected String getCoalescedTargetLabel() {
+        return mConfig.getTestTargetLabel();
+    }
+
+    @Override
+    protected BuildEventListener createBuildEventListener() {
+        return new BuildEventListener() {
+            @Override
+            public void onTestResult(TestResultEvent event) {
+                getLogger().info("Bazel test {} attempt {} in {}ms{}", event.label, event.status, event.durationMillis, event.cached ? " (cached)" : "");
+            }
+
+            @Override
+            public void onTestSummary(TestSummaryEvent event) {
+                getLogger().lifecycle("{} {} ({} of {} runs cached)", event.label, event.overallStatus, event.cachedRunCount, event.totalRunCount);
+                event.failedLogs.forEach(failedLog -> getLogger().lifecycle("  see {}", failedLog));
+            }
+        };
+    }
+
     @Override
     public void setBazelConfig(BazelLeafConfig.Decorated config) {
         super.setBazelConfig(config);
+        getInputs().property("bazelTarget", config.getTestTargetLabel());
         setDescription("Tests Bazel target " + config.targetPath + ":" + config.testTargetName);
         setGroup("verification");
     }
@@ -0,0 +1,66 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Counts how many times the Bazel server of a workspace discarded its analysis cache, since the analysis of every
+ * target then runs again. There is one instance per workspace, which lives as long as the Gradle daemon, as does the
+ * Bazel server's cache.
+ */
+public class AnalysisCacheMonitor {
+
+    private static final Logger LOGGER = Logging.getLogger(AnalysisCacheMonitor.class);
+    private static final Map<File, AnalysisCacheMonitor> INSTANCES = new ConcurrentHashMap<>();
+    //for example, `INFO: Build options have changed, discarding analysis cache.`
+    private static final Pattern DISCARDING_PATTERN = Pattern.compile("^INFO: Build options? .* changed, discarding analysis cache.*");
+
+    private final AtomicInteger mDiscardCount = new AtomicInteger();
+    private final AtomicReference<String> mLastCommand = new AtomicReference<>();
+
+    public static AnalysisCacheMonitor forWorkspace(File workspaceRootFolder) {
+        return INSTANCES.computeIfAbsent(workspaceRootFolder.getAbsoluteFile(), workspace -> new AnalysisCacheMonitor());
+    }
+
+    AnalysisCacheMonitor() {
+    }
+
+    /**
+     * @return a stderr consumer for a run of the given command (for example, `build //lib2:jar --keep_going`).
+     */
+    public Consumer<String> watch(String command) {
+        return new Consumer<String>() {
+            private boolean mStarted;
+            private String mPreviousCommand;
+
+            @Override
+            public void accept(String line) {
+                if (!mStarted) {
+                    //the run actually started, so it follows whatever ran before it.
+                    mStarted = true;
+                    mPreviousCommand = mLastCommand.getAndSet(command);
+                }
+                if (DISCARDING_PATTERN.matcher(line).matches()) {
+                    mDiscardCount.incrementAndGet();
+                    LOGGER.lifecycle("Bazel discarded its analysis cache for `bazel {}`, since the previous command{} used other build options.",
+                            command, mPreviousCommand != null ? " (`bazel " + mPreviousCommand + "`)" : "");
+                }
+            }
+        };
+    }
+
+    /**
+     * @return how many times the analysis cache was discarded, since the Gradle daemon started.
+     */
+    public int getDiscardCount() {
+        return mDiscardCount.get();
+    }
+}
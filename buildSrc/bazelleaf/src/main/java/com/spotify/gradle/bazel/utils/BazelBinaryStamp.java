@@ -0,0 +1,105 @@
+package com.spotify.gradle.bazel.utils;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * A stamp file, next to the Bazel binary, that records the binary's size, timestamp and SHA-256 at the time it was
+ * last successfully probed. A binary that matches its stamp is known to be valid without launching it.
+ */
+public class BazelBinaryStamp {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BazelBinaryStamp.class);
+    private static final String SIZE_KEY = "size";
+    private static final String LAST_MODIFIED_KEY = "last-modified";
+    private static final String SHA256_KEY = "sha256";
+    private static final String LAST_PROBE_KEY = "last-probe";
+
+    private final File mBinary;
+    private final File mStampFile;
+
+    public BazelBinaryStamp(File binary) {
+        mBinary = binary;
+        mStampFile = new File(binary.getParentFile(), binary.getName() + ".stamp");
+    }
+
+    public boolean exists() {
+        return mStampFile.isFile();
+    }
+
+    /**
+     * Returns true if the binary was not changed since it was stamped. The binary is hashed only if its size or
+     * timestamp differ from the stamp's.
+     */
+    public boolean isUpToDate() {
+        final Properties stamp = readStamp();
+        if (stamp == null || !mBinary.isFile()) {
+            return false;
+        }
+        if (Long.toString(mBinary.length()).equals(stamp.getProperty(SIZE_KEY))
+                && Long.toString(mBinary.lastModified()).equals(stamp.getProperty(LAST_MODIFIED_KEY))) {
+            return true;
+        }
+        //touched, but maybe not changed.
+        return calculateSha256().equals(stamp.getProperty(SHA256_KEY));
+    }
+
+    /**
+     * Records the binary's current state, after it was successfully probed. Does nothing if the binary does not exist.
+     */
+    public void write() {
+        if (!mBinary.isFile()) {
+            return;
+        }
+        final Properties stamp = new Properties();
+        stamp.setProperty(SIZE_KEY, Long.toString(mBinary.length()));
+        stamp.setProperty(LAST_MODIFIED_KEY, Long.toString(mBinary.lastModified()));
+        stamp.setProperty(SHA256_KEY, calculateSha256());
+        stamp.setProperty(LAST_PROBE_KEY, Long.toString(System.currentTimeMillis()));
+        try (Writer writer = Files.newWriter(mStampFile, StandardCharsets.UTF_8)) {
+            stamp.store(writer, "bazel-leaf: the last successful probe of " + mBinary.getName());
+        } catch (IOException e) {
+            //for example, a binary in a read-only folder. It will be probed on every configuration.
+            LOGGER.info("Failed to write Bazel binary stamp {}. Error: {}", mStampFile, e.getMessage());
+        }
+    }
+
+    public void delete() {
+        if (mStampFile.exists() && !mStampFile.delete()) {
+            LOGGER.info("Failed to delete Bazel binary stamp {}", mStampFile);
+        }
+    }
+
+    @javax.annotation.Nullable
+    private Properties readStamp() {
+        if (!mStampFile.isFile()) {
+            return null;
+        }
+        try (Reader reader = Files.newReader(mStampFile, StandardCharsets.UTF_8)) {
+            final Properties stamp = new Properties();
+            stamp.load(reader);
+            return stamp;
+        } catch (IOException e) {
+            LOGGER.info("Failed to read Bazel binary stamp {}. Error: {}", mStampFile, e.getMessage());
+            return null;
+        }
+    }
+
+    private String calculateSha256() {
+        try {
+            return Files.asByteSource(mBinary).hash(Hashing.sha256()).toString();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to calculate digest for " + mBinary, e);
+        }
+    }
+}
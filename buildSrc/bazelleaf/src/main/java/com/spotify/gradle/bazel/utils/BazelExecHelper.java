@@ -1,56 +1,207 @@
 package com.spotify.gradle.bazel.utils;
 
 import com.spotify.gradle.bazel.BazelLeafConfig;
+import com.spotify.gradle.bazel.bep.BuildEventFileReader;
+import com.spotify.gradle.bazel.bep.BuildEventListener;
+import com.spotify.gradle.bazel.bep.CompositeBuildEventListener;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
 
 /**
  * General utilities for executing actions with Bazel binary.
  */
-public class BazelExecHelper {
+public class BazelExecHelper implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static final LoggerWithFlush LOGGER = new LoggerWithFlush();
+    //the commands that execute actions, and so can use a disk cache.
+    private static final Collection<String> BUILD_COMMANDS = Arrays.asList("build", "test", "run", "coverage");
+    //the commands that may fetch external repositories, and so can use a repository cache.
+    private static final Collection<String> FETCHING_COMMANDS = Arrays.asList("build", "test", "run", "coverage", "fetch", "query");
+    //printed once the packages were loaded (and their externals fetched), for example `INFO: Analysed 2 targets (0 packages loaded).`
+    private static final Pattern ANALYSIS_STARTED_PATTERN = Pattern.compile("^INFO: Analy[sz]ed .*");
     private static final Collection<String> BASIC_EXEC_ARGS = Arrays.asList("--curses=no", "--color=no", "--experimental_ui=no", "--progress_in_terminal_title=no");
+    private final List<String> mStartupOptions = new ArrayList<>();
 
     public static class BazelExec {
         private final boolean mOutputToConsole;
         private final ProcessBuilder mProcessBuilder;
+        private final List<Consumer<String>> mStdoutConsumers = new ArrayList<>();
+        private final List<Consumer<String>> mStderrConsumers = new ArrayList<>();
+        private final List<BuildEventListener> mBuildEventListeners = new ArrayList<>();
+        private File mLogFile;
+        private RepositoryFetchLock mFetchLock;
 
         BazelExec(boolean outputToConsole, ProcessBuilder processBuilder) {
             mOutputToConsole = outputToConsole;
             mProcessBuilder = processBuilder;
         }
 
+        /**
+         * Adds a consumer that will receive every line of the process output (stdout and stderr), as soon as it is read.
+         */
+        public void addLineConsumer(Consumer<String> lineConsumer) {
+            mStdoutConsumers.add(lineConsumer);
+            mStderrConsumers.add(lineConsumer);
+        }
+
+        /**
+         * Adds a consumer that will receive every line of the process' stdout (a command's actual output, for example
+         * the values printed by `bazel info`), as soon as it is read.
+         */
+        public void addStdoutConsumer(Consumer<String> lineConsumer) {
+            mStdoutConsumers.add(lineConsumer);
+        }
+
+        /**
+         * Adds a consumer that will receive every line of the process' stderr (Bazel's progress, warnings and errors),
+         * as soon as it is read.
+         */
+        public void addStderrConsumer(Consumer<String> lineConsumer) {
+            mStderrConsumers.add(lineConsumer);
+        }
+
+        /**
+         * Adds a listener to the Build Event Protocol events of this run. With any listener, Bazel is asked to write a
+         * `--build_event_json_file`, which is parsed while the build is running. Only `build` and `test` runs report events.
+         */
+        public void addBuildEventListener(BuildEventListener listener) {
+            mBuildEventListeners.add(listener);
+        }
+
+        /**
+         * Sets a file that will hold the full output of the process. Only the output's tail is kept in memory.
+         */
+        public void setLogFile(File logFile) {
+            mLogFile = logFile;
+        }
+
+        /**
+         * Sets a lock that is held from the start of the process, until it finished loading packages and fetching
+         * external repositories (or exited).
+         */
+        public void setFetchLock(RepositoryFetchLock fetchLock) {
+            mFetchLock = fetchLock;
+        }
+
         public RunResult start() throws IOException, InterruptedException {
-            mProcessBuilder.redirectErrorStream(true);
-            final Process process = mProcessBuilder.start();
-            final InputStream processInputStream = process.getInputStream();
-
-            final StringBuilder stringBuilder = new StringBuilder();
-            int c;
-            while ((c = processInputStream.read()) != -1) {
-                if (mOutputToConsole) {
-                    LOGGER.append((char) c);
+            final RepositoryFetchLock.Held heldFetchLock = mFetchLock != null ? mFetchLock.acquire() : null;
+            try {
+                return startProcess(heldFetchLock);
+            } finally {
+                if (heldFetchLock != null) {
+                    heldFetchLock.close();
+                }
+            }
+        }
+
+        private RunResult startProcess(@javax.annotation.Nullable RepositoryFetchLock.Held heldFetchLock) throws IOException, InterruptedException {
+            final List<String> command = mProcessBuilder.command();
+            final BuildEventFileReader buildEventFileReader;
+            final File buildEventsFile;
+            if (mBuildEventListeners.isEmpty()) {
+                buildEventsFile = null;
+                buildEventFileReader = null;
+            } else {
+                buildEventsFile = File.createTempFile("bazel-leaf-events", ".json");
+                //only reserving a unique name: the reader waits for Bazel to create the file.
+                Files.delete(buildEventsFile.toPath());
+                final List<String> commandWithEvents = new ArrayList<>(command);
+                commandWithEvents.add("--build_event_json_file=" + buildEventsFile.getAbsolutePath());
+                mProcessBuilder.command(commandWithEvents);
+                buildEventFileReader = new BuildEventFileReader(buildEventsFile, new CompositeBuildEventListener(mBuildEventListeners));
+            }
+
+            final Process process;
+            try {
+                process = mProcessBuilder.start();
+            } finally {
+                mProcessBuilder.command(command);
+            }
+            if (buildEventFileReader != null) {
+                buildEventFileReader.start();
+            }
+
+            final List<Consumer<String>> stdoutConsumers = new ArrayList<>(mStdoutConsumers);
+            final List<Consumer<String>> stderrConsumers = new ArrayList<>(mStderrConsumers);
+            if (heldFetchLock != null) {
+                stderrConsumers.add(line -> {
+                    if (ANALYSIS_STARTED_PATTERN.matcher(line).matches()) {
+                        try {
+                            heldFetchLock.close();
+                        } catch (IOException e) {
+                            LOGGER.log("Failed to release the repository cache lock. Error: " + e.getMessage());
+                        }
+                    }
+                });
+            }
+            final LogFileWriter logFileWriter = mLogFile != null ? new LogFileWriter(mLogFile) : null;
+            final ConsoleForwarder consoleForwarder = mOutputToConsole ? new ConsoleForwarder() : null;
+            for (Consumer<String> sharedConsumer : Arrays.asList(logFileWriter, consoleForwarder)) {
+                if (sharedConsumer != null) {
+                    stdoutConsumers.add(sharedConsumer);
+                    stderrConsumers.add(sharedConsumer);
+                }
+            }
+
+            //both streams are drained concurrently, so neither can fill its pipe and stall the process.
+            final ProcessOutput stdout = new ProcessOutput(stdoutConsumers, ProcessOutput.DEFAULT_TAIL_SIZE);
+            final ProcessOutput stderr = new ProcessOutput(stderrConsumers, ProcessOutput.DEFAULT_TAIL_SIZE);
+            try {
+                final CompletableFuture<Void> stdoutPumped = stdout.pumpInBackground(process.getInputStream(), "stdout");
+                final CompletableFuture<Void> stderrPumped = stderr.pumpInBackground(process.getErrorStream(), "stderr");
+                stdoutPumped.get();
+                stderrPumped.get();
+                process.waitFor();
+            } catch (ExecutionException e) {
+                process.destroy();
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to read the output of bazel " + toString(), e.getCause());
+            } catch (InterruptedException e) {
+                //the caller gave up on this run (for example, the build was cancelled), so it should not keep running.
+                process.destroy();
+                Thread.currentThread().interrupt();
+                throw e;
+            } finally {
+                if (consoleForwarder != null) {
+                    consoleForwarder.close();
+                }
+                if (logFileWriter != null) {
+                    logFileWriter.close();
+                }
+                if (buildEventFileReader != null) {
+                    buildEventFileReader.close();
+                    Files.deleteIfExists(buildEventsFile.toPath());
                 }
-                stringBuilder.append((char) c);
             }
-            process.waitFor();
 
-            final RunResult result = new RunResult(process.exitValue(), Arrays.asList(stringBuilder.toString().split("\\r?\\n")));
+            final RunResult result = new RunResult(process.exitValue(), stdout.getTail(), stderr.getTail(), mLogFile);
             if (result.getExitCode() != 0) {
                 if (!mOutputToConsole) {
-                    LOGGER.log(stringBuilder.toString());
+                    result.getErrorOutput().forEach(LOGGER::log);
+                }
+                if (mLogFile != null) {
+                    LOGGER.log("The full output of this run is at " + mLogFile.getAbsolutePath());
                 }
                 throw new IOException("Got process exit code " + result.getExitCode() + " when running bazel " + toString());
             }
@@ -67,19 +218,47 @@ public class BazelExecHelper {
     public static class RunResult {
         private final int mExitCode;
         private final List<String> mOutput;
+        private final List<String> mErrorOutput;
+        @javax.annotation.Nullable
+        private final File mLogFile;
 
         public RunResult(int exitCode, List<String> executionOutput) {
+            this(exitCode, executionOutput, Collections.emptyList(), null);
+        }
+
+        public RunResult(int exitCode, List<String> executionOutput, List<String> errorOutput, @javax.annotation.Nullable File logFile) {
             mExitCode = exitCode;
             mOutput = executionOutput;
+            mErrorOutput = errorOutput;
+            mLogFile = logFile;
         }
 
         public int getExitCode() {
             return mExitCode;
         }
 
+        /**
+         * @return the last lines of the process' stdout (see {@link ProcessOutput#DEFAULT_TAIL_SIZE}). Use
+         * {@link BazelExec#addStdoutConsumer(Consumer)} to process the complete output.
+         */
         public List<String> getExecutionOutput() {
             return mOutput;
         }
+
+        /**
+         * @return the last lines of the process' stderr, where Bazel reports progress and errors.
+         */
+        public List<String> getErrorOutput() {
+            return mErrorOutput;
+        }
+
+        /**
+         * @return the file holding the full output of the process, or null if it was not spilled to a file.
+         */
+        @javax.annotation.Nullable
+        public File getLogFile() {
+            return mLogFile;
+        }
     }
 
     public BazelExec createBazelRun(
@@ -88,14 +267,50 @@ public class BazelExecHelper {
             String target,
             String bazelCommand,
             String... args) {
+        final List<String> targetLabels = target != null && !target.isEmpty()
+                ? Collections.singletonList(config.targetPath + ':' + target)
+                : Collections.emptyList();
+
+        return createBazelRun(outputToConsole, config, targetLabels, bazelCommand, args);
+    }
+
+    /**
+     * Creates a Bazel run over several, fully qualified, target labels (for example `//lib2:jar`).
+     */
+    public BazelExec createBazelRun(
+            boolean outputToConsole,
+            BazelLeafConfig.Decorated config,
+            List<String> targetLabels,
+            String bazelCommand,
+            String... args) {
+        final boolean useDiskCache = config.diskCacheFolder != null && BUILD_COMMANDS.contains(bazelCommand);
+        final boolean useRepositoryCache = config.repositoryCacheFolder != null && FETCHING_COMMANDS.contains(bazelCommand);
         List<String> execArgs = new ArrayList<>();
         execArgs.add("--symlink_prefix=" + config.buildOutputDir);
-        if (target != null && !target.isEmpty()) {
-            execArgs.add(config.targetPath + ':' + target);
+        if (useDiskCache) {
+            execArgs.add("--disk_cache=" + config.diskCacheFolder.getAbsolutePath());
         }
-        execArgs.addAll(Arrays.asList(args));
+        if (useRepositoryCache) {
+            execArgs.add("--repository_cache=" + config.repositoryCacheFolder.getAbsolutePath());
+        }
+        execArgs.addAll(targetLabels);
+        final List<String> commandArgs = BazelOptionNormalizer.normalize(bazelCommand, config.buildFlags, Arrays.asList(args));
+        execArgs.addAll(commandArgs);
 
-        return createBazelRun(outputToConsole, config.bazelBin, config.workspaceRootFolder, bazelCommand, execArgs);
+        final BazelExec bazelExec = createBazelRun(outputToConsole, config.bazelBin, getStartupOptions(config), config.workspaceRootFolder, bazelCommand, execArgs);
+        if (useDiskCache) {
+            bazelExec.addStderrConsumer(new DiskCacheStats());
+        }
+        if (useRepositoryCache) {
+            bazelExec.setFetchLock(new RepositoryFetchLock(config.repositoryCacheFolder));
+        }
+        if (BUILD_COMMANDS.contains(bazelCommand)) {
+            final List<String> commandLine = new ArrayList<>(targetLabels);
+            commandLine.addAll(commandArgs);
+            bazelExec.addStderrConsumer(AnalysisCacheMonitor.forWorkspace(config.workspaceRootFolder)
+                    .watch(bazelCommand + ' ' + String.join(" ", commandLine)));
+        }
+        return bazelExec;
     }
 
     public BazelExec createBazelRun(
@@ -104,9 +319,20 @@ public class BazelExecHelper {
             File workspaceRootFolder,
             String bazelCommand,
             List<String> args) {
+        return createBazelRun(outputToConsole, bazelBinPath, mStartupOptions, workspaceRootFolder, bazelCommand, args);
+    }
+
+    private static BazelExec createBazelRun(
+            boolean outputToConsole,
+            String bazelBinPath,
+            List<String> startupOptions,
+            File workspaceRootFolder,
+            String bazelCommand,
+            List<String> args) {
         final ProcessBuilder builder = new ProcessBuilder();
-        final List<String> execArgs = new ArrayList<>(1 + BASIC_EXEC_ARGS.size() + 1 + args.size());
+        final List<String> execArgs = new ArrayList<>(1 + startupOptions.size() + BASIC_EXEC_ARGS.size() + 1 + args.size());
         execArgs.add(bazelBinPath);
+        execArgs.addAll(startupOptions);
         execArgs.add(bazelCommand);
         execArgs.addAll(BASIC_EXEC_ARGS);
         execArgs.addAll(args);
@@ -114,11 +340,40 @@ public class BazelExecHelper {
         builder.command(execArgs);
         builder.directory(workspaceRootFolder);
 
-        return new BazelExec(outputToConsole, builder);
+        final BazelExec bazelExec = new BazelExec(outputToConsole, builder);
+        bazelExec.addStderrConsumer(new BazelServerWatcher());
+        return bazelExec;
+    }
+
+    /**
+     * Startup options are passed before the command, to every Bazel run. Changing them restarts the Bazel server.
+     */
+    public List<String> getStartupOptions() {
+        return Collections.unmodifiableList(mStartupOptions);
+    }
+
+    public void setStartupOptions(List<String> startupOptions) {
+        mStartupOptions.clear();
+        mStartupOptions.addAll(startupOptions);
+    }
+
+    /*
+     * A module's startup options are the build's, but a helper that was given startup options (for example, to validate
+     * the binary before any module was configured) keeps using them.
+     */
+    private List<String> getStartupOptions(BazelLeafConfig.Decorated config) {
+        return mStartupOptions.isEmpty() ? config.startupOptions : mStartupOptions;
     }
 
     public Properties getInfo(BazelLeafConfig.Decorated config) {
-        BazelExec infoExec = createBazelRun(false, config, "", "info");
+        return getInfo(config, Collections.emptyList());
+    }
+
+    /**
+     * Runs `bazel info`, asking only for the given keys (or for everything if no keys were given).
+     */
+    public Properties getInfo(BazelLeafConfig.Decorated config, List<String> keys) {
+        BazelExec infoExec = createBazelRun(false, config, "", "info", keys.toArray(new String[0]));
         try {
             RunResult runResult = infoExec.start();
 
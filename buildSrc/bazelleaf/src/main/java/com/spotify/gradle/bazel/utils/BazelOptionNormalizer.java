@@ -0,0 +1,93 @@
+package com.spotify.gradle.bazel.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the configuration-affecting options of all the Bazel commands the plugin issues identical.
+ * <p>
+ * The Bazel server keeps the analysis of the targets it built, but only as long as the build configuration does not
+ * change: a `bazel test` with a `--define` that the previous `bazel build` (or aspect run) did not have, discards all of
+ * it. So, every analysing command gets the workspace's build flags (`bazel.build.flags`), and a command can not add
+ * configuration-affecting options of its own. Other options (for example, `--keep_going` or `--output_groups`) do not
+ * change the configuration, and are passed as they are.
+ */
+public final class BazelOptionNormalizer {
+
+    //the commands that analyse targets, and `info`, which reports configuration-dependent paths (like `bazel-bin`).
+    private static final Collection<String> CONFIGURED_COMMANDS = Arrays.asList("build", "test", "run", "coverage", "info");
+    //options of the build configuration's fragments, which are commonly set by users.
+    private static final Set<String> CONFIGURATION_OPTIONS = new HashSet<>(Arrays.asList(
+            "compilation_mode", "cpu", "host_cpu", "android_cpu", "fat_apk_cpu", "crosstool_top", "android_crosstool_top",
+            "define", "copt", "cxxopt", "linkopt", "javacopt", "host_javacopt", "action_env", "features", "stamp",
+            "java_toolchain", "host_java_toolchain", "javabase", "host_javabase", "strict_java_deps", "platforms",
+            "host_platform", "collect_code_coverage", "instrumentation_filter", "run_under",
+            "test_env", "test_arg", "test_timeout", "test_filter", "cache_test_results"));
+
+    private BazelOptionNormalizer() {
+        /*A utility class. No need to create instances.*/
+    }
+
+    /**
+     * @return the options to pass to the given command: the build flags (for commands that are configured), followed
+     * by the command's own options.
+     * @throws IllegalArgumentException if the command's own options would change the build configuration.
+     */
+    public static List<String> normalize(String bazelCommand, List<String> buildFlags, List<String> commandArgs) {
+        if (!CONFIGURED_COMMANDS.contains(bazelCommand)) {
+            return commandArgs;
+        }
+
+        final List<String> normalizedBuildFlags = canonicalize(buildFlags);
+        final List<String> options = new ArrayList<>(normalizedBuildFlags);
+        for (String commandArg : canonicalize(commandArgs)) {
+            if (isConfigurationOption(commandArg)) {
+                if (!normalizedBuildFlags.contains(commandArg)) {
+                    throw new IllegalArgumentException("The option '" + commandArg + "' of `bazel " + bazelCommand + "` changes the "
+                            + "build configuration, and would make Bazel discard its analysis cache. Add it to 'bazel.build.flags' "
+                            + "in gradle.properties, so all the commands use it.");
+                }
+            } else {
+                options.add(commandArg);
+            }
+        }
+        return options;
+    }
+
+    /*
+     * Spells the short form `-c opt` (or `-copt`) as `--compilation_mode=opt`, so the same option is always spelled the
+     * same. Other options are expected in their `--option=value` form.
+     */
+    static List<String> canonicalize(List<String> args) {
+        final List<String> canonical = new ArrayList<>(args.size());
+        for (int argIndex = 0; argIndex < args.size(); argIndex++) {
+            final String arg = args.get(argIndex);
+            if (arg.equals("-c") && argIndex + 1 < args.size()) {
+                argIndex++;
+                canonical.add("--compilation_mode=" + args.get(argIndex));
+            } else if (arg.startsWith("-c") && !arg.startsWith("--")) {
+                canonical.add("--compilation_mode=" + arg.substring(2));
+            } else {
+                canonical.add(arg);
+            }
+        }
+        return canonical;
+    }
+
+    static boolean isConfigurationOption(String arg) {
+        if (!arg.startsWith("--")) {
+            return false;
+        }
+        final int valueIndex = arg.indexOf('=');
+        String optionName = valueIndex < 0 ? arg.substring(2) : arg.substring(2, valueIndex);
+        if (valueIndex < 0 && optionName.startsWith("no")) {
+            //boolean options, like `--nostamp`.
+            optionName = optionName.substring(2);
+        }
+        return CONFIGURATION_OPTIONS.contains(optionName);
+    }
+}
@@ -0,0 +1,74 @@
+package com.spotify.gradle.bazel.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Utilities for locating the files that define Bazel packages in the workspace.
+ */
+public final class BazelPackages {
+
+    //"//andlib/innerandlib:inneraar"
+    private static final Pattern LOCAL_LABEL_PATTERN = Pattern.compile("^//([^:]*):.*$");
+    //load("//tools/build_rules:android.bzl", "android_rule") or load(":defs.bzl", "macro")
+    private static final Pattern LOCAL_LOAD_PATTERN = Pattern.compile("load\\(\\s*\"(?://([^:\"]*))?:([^\"]+\\.bzl)\"");
+
+    private BazelPackages() {
+        /*A utility class. No need to create instances.*/
+    }
+
+    /**
+     * @return the package path of a local label (for example, `andlib/innerandlib` for `//andlib/innerandlib:inneraar`),
+     * or null if the label is not a local one.
+     */
+    @javax.annotation.Nullable
+    public static String getPackagePath(String label) {
+        final Matcher matcher = LOCAL_LABEL_PATTERN.matcher(label);
+        return matcher.matches() ? matcher.group(1) : null;
+    }
+
+    /**
+     * @return the BUILD file of the given package. Note that the file may not exist.
+     */
+    public static File getBuildFile(File workspaceRootFolder, String packagePath) {
+        final File packageFolder = new File(workspaceRootFolder, packagePath);
+        final File buildDotBazelFile = new File(packageFolder, "BUILD.bazel");
+        return buildDotBazelFile.exists() ? buildDotBazelFile : new File(packageFolder, "BUILD");
+    }
+
+    /**
+     * @return true if the given folder is a package: it has a BUILD file.
+     */
+    public static boolean isPackageFolder(File folder) {
+        return new File(folder, "BUILD.bazel").isFile() || new File(folder, "BUILD").isFile();
+    }
+
+    /**
+     * @return the workspace's `.bzl` files that are loaded by the given BUILD file. External repositories' files are not included.
+     */
+    public static Set<File> getLoadedExtensionFiles(File workspaceRootFolder, File buildFile) {
+        final Set<File> extensionFiles = new LinkedHashSet<>();
+        if (!buildFile.isFile()) {
+            return extensionFiles;
+        }
+
+        try {
+            final Matcher matcher = LOCAL_LOAD_PATTERN.matcher(new String(Files.readAllBytes(buildFile.toPath()), StandardCharsets.UTF_8));
+            while (matcher.find()) {
+                final File packageFolder = matcher.group(1) == null
+                        ? buildFile.getParentFile()
+                        : new File(workspaceRootFolder, matcher.group(1));
+                extensionFiles.add(new File(packageFolder, matcher.group(2)));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read BUILD file " + buildFile, e);
+        }
+        return extensionFiles;
+    }
+}
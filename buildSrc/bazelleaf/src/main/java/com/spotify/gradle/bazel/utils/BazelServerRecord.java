@@ -0,0 +1,100 @@
+package com.spotify.gradle.bazel.utils;
+
+import com.google.common.io.Files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Bazel server the workspace's builds last talked to, persisted in the root build folder. A server with another PID
+ * than the recorded one was restarted since, and the time the recorded server was first seen bounds its uptime.
+ */
+public class BazelServerRecord {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BazelServerRecord.class);
+    private static final String PID_KEY = "pid";
+    private static final String STARTUP_OPTIONS_KEY = "startup-options";
+    private static final String FIRST_SEEN_KEY = "first-seen";
+
+    public final String pid;
+    public final List<String> startupOptions;
+    public final long firstSeenMillis;
+
+    BazelServerRecord(String pid, List<String> startupOptions, long firstSeenMillis) {
+        this.pid = pid;
+        this.startupOptions = startupOptions;
+        this.firstSeenMillis = firstSeenMillis;
+    }
+
+    public static File getRecordFile(File rootBuildDir) {
+        return new File(rootBuildDir, "bazel-leaf/bazel-server.properties");
+    }
+
+    /**
+     * @return the recorded server, or null if none was recorded.
+     */
+    @javax.annotation.Nullable
+    public static BazelServerRecord read(File recordFile) {
+        if (!recordFile.isFile()) {
+            return null;
+        }
+        try (Reader reader = Files.newReader(recordFile, StandardCharsets.UTF_8)) {
+            final Properties properties = new Properties();
+            properties.load(reader);
+            final String pid = properties.getProperty(PID_KEY);
+            final String startupOptions = properties.getProperty(STARTUP_OPTIONS_KEY, "");
+            final String firstSeen = properties.getProperty(FIRST_SEEN_KEY);
+            if (pid == null || firstSeen == null) {
+                return null;
+            }
+            return new BazelServerRecord(pid,
+                    startupOptions.isEmpty() ? Collections.emptyList() : Arrays.asList(startupOptions.split("\n")),
+                    Long.parseLong(firstSeen));
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.info("Failed to read the Bazel server record {}. Error: {}", recordFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records that the server with the given PID is running, keeping the time it was first seen if it was already
+     * recorded.
+     */
+    public static BazelServerRecord observe(File recordFile, @javax.annotation.Nullable BazelServerRecord previous, String pid, List<String> startupOptions) {
+        final BazelServerRecord record = new BazelServerRecord(pid, startupOptions,
+                previous != null && previous.pid.equals(pid) ? previous.firstSeenMillis : System.currentTimeMillis());
+        final Properties properties = new Properties();
+        properties.setProperty(PID_KEY, record.pid);
+        properties.setProperty(STARTUP_OPTIONS_KEY, String.join("\n", record.startupOptions));
+        properties.setProperty(FIRST_SEEN_KEY, Long.toString(record.firstSeenMillis));
+        try {
+            Files.createParentDirs(recordFile);
+            try (Writer writer = Files.newWriter(recordFile, StandardCharsets.UTF_8)) {
+                properties.store(writer, "bazel-leaf: the last Bazel server of this workspace");
+            }
+        } catch (IOException e) {
+            LOGGER.info("Failed to write the Bazel server record {}. Error: {}", recordFile, e.getMessage());
+        }
+        return record;
+    }
+
+    /**
+     * @return how long the server is known to be up, for example `1h 05m 12s`.
+     */
+    public String getUptime() {
+        final long uptimeSeconds = TimeUnit.MILLISECONDS.toSeconds(Math.max(0, System.currentTimeMillis() - firstSeenMillis));
+        return String.format(Locale.US, "%dh %02dm %02ds", uptimeSeconds / 3600, (uptimeSeconds / 60) % 60, uptimeSeconds % 60);
+    }
+}
@@ -0,0 +1,40 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A stderr consumer that reports when a Bazel run had to start a new server, and why. Each restart costs the server's
+ * JVM startup, and throws away its analysis cache.
+ */
+public class BazelServerWatcher implements Consumer<String> {
+
+    //for example, `WARNING: Running Bazel server needs to be killed, because the startup options are different.`
+    private static final Pattern SERVER_KILLED_PATTERN = Pattern.compile("^WARNING: Running \\S+ server needs to be killed, because (.+?)\\.?$");
+    private static final Pattern SERVER_STARTING_PATTERN = Pattern.compile("^Starting local \\S+ server and connecting to it.*");
+
+    private final Logger mLogger;
+
+    public BazelServerWatcher() {
+        this(Logging.getLogger(BazelServerWatcher.class));
+    }
+
+    BazelServerWatcher(Logger logger) {
+        mLogger = logger;
+    }
+
+    @Override
+    public void accept(String line) {
+        final Matcher serverKilledMatcher = SERVER_KILLED_PATTERN.matcher(line);
+        if (serverKilledMatcher.matches()) {
+            mLogger.warn("The Bazel server was restarted, because {}. Something else (a terminal, or the IDE) is using this "
+                    + "workspace with other startup options than the build's.", serverKilledMatcher.group(1));
+        } else if (SERVER_STARTING_PATTERN.matcher(line).matches()) {
+            mLogger.info("Starting a new Bazel server.");
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Forwards process output lines to Gradle's console, without ever blocking the process' pipe.
+ * <p>
+ * Lines are handed over to a dedicated thread through a bounded queue. That thread batches the lines that arrived,
+ * and writes them through Gradle's logging as a single message, at most once every {@link #FLUSH_INTERVAL_MS}
+ * milliseconds (or sooner, if the batch is full).
+ * If the console cannot keep up and the queue fills, lines are dropped (and counted) rather than stalling the
+ * process. The full output is still available in the run's log file. Bazel's error lines (`ERROR:` and `FAIL`) are
+ * never dropped: for those, the process waits for room in the queue.
+ */
+public class ConsoleForwarder implements Consumer<String>, AutoCloseable {
+
+    static final long FLUSH_INTERVAL_MS = 100;
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final int MAX_BATCH_LINES = 500;
+    private static final long CLOSE_TIMEOUT_MS = 5_000;
+    private static final String END_OF_OUTPUT = new String("end-of-output");
+
+    private final Logger mLogger;
+    private final BlockingQueue<String> mQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger mDroppedLines = new AtomicInteger();
+    private final Thread mForwardingThread;
+
+    public ConsoleForwarder() {
+        this(Logging.getLogger(ConsoleForwarder.class));
+    }
+
+    ConsoleForwarder(Logger logger) {
+        mLogger = logger;
+        mForwardingThread = new Thread(this::forward, "bazel-leaf-console");
+        mForwardingThread.setDaemon(true);
+        mForwardingThread.start();
+    }
+
+    @Override
+    public void accept(String line) {
+        if (mQueue.offer(line)) {
+            return;
+        }
+        if (isErrorLine(line)) {
+            try {
+                mQueue.put(line);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        mDroppedLines.incrementAndGet();
+    }
+
+    /**
+     * Waits for the queued lines to be written.
+     */
+    @Override
+    public void close() {
+        try {
+            //the end marker must not be dropped, so this may wait for room in the queue.
+            if (mQueue.offer(END_OF_OUTPUT, CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                mForwardingThread.join(CLOSE_TIMEOUT_MS);
+            } else {
+                mForwardingThread.interrupt();
+            }
+        } catch (InterruptedException e) {
+            //the forwarding thread writes whatever it batched, and stops.
+            mForwardingThread.interrupt();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isErrorLine(String line) {
+        return line.startsWith("ERROR:") || line.startsWith("FAIL");
+    }
+
+    private void forward() {
+        final List<String> batch = new ArrayList<>();
+        long lastWriteNanos = System.nanoTime();
+        try {
+            boolean ended = false;
+            while (!ended) {
+                final String line = mQueue.poll(FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (line != null) {
+                    batch.add(line);
+                    mQueue.drainTo(batch, MAX_BATCH_LINES - batch.size());
+                }
+                //identity check, so a process printing "end-of-output" does not end forwarding.
+                ended = batch.removeIf(batchLine -> batchLine == END_OF_OUTPUT);
+
+                final long nowNanos = System.nanoTime();
+                if (ended || batch.size() >= MAX_BATCH_LINES
+                        || nowNanos - lastWriteNanos >= TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MS)) {
+                    write(batch);
+                    batch.clear();
+                    lastWriteNanos = nowNanos;
+                }
+            }
+        } catch (InterruptedException e) {
+            write(batch);
+        }
+    }
+
+    private void write(List<String> batch) {
+        final int droppedLines = mDroppedLines.getAndSet(0);
+        if (droppedLines > 0) {
+            mLogger.lifecycle("[bazel-leaf: {} lines were not shown. See the run's log file for the full output.]", droppedLines);
+        }
+        if (!batch.isEmpty()) {
+            mLogger.lifecycle(String.join("\n", batch));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a Bazel disk cache under its configured size, by evicting the least recently used entries (of both the CAS
+ * and the action cache). Bazel never trims its disk cache by itself.
+ * <p>
+ * An entry's last use is its last access time, or its modification time if that is later, since many file systems are
+ * mounted without access-time updates.
+ * Collection walks the whole cache, so it runs on a background thread, and at most once every
+ * {@link #MIN_COLLECTION_INTERVAL_MS} milliseconds (tracked by a marker file in the cache folder).
+ */
+public class DiskCacheCollector {
+
+    static final long MIN_COLLECTION_INTERVAL_MS = TimeUnit.HOURS.toMillis(1);
+    static final String MARKER_FILE_NAME = ".bazel-leaf-gc";
+
+    private static final Logger LOGGER = Logging.getLogger(DiskCacheCollector.class);
+
+    private final File mCacheFolder;
+    private final long mMaxSizeBytes;
+
+    public DiskCacheCollector(File cacheFolder, long maxSizeBytes) {
+        mCacheFolder = cacheFolder;
+        mMaxSizeBytes = maxSizeBytes;
+    }
+
+    /**
+     * Collects on a background thread, unless the cache was collected recently.
+     */
+    public void startInBackground() {
+        final File markerFile = new File(mCacheFolder, MARKER_FILE_NAME);
+        if (System.currentTimeMillis() - markerFile.lastModified() < MIN_COLLECTION_INTERVAL_MS) {
+            return;
+        }
+
+        final Thread collectionThread = new Thread(() -> {
+            try {
+                final Result result = collect();
+                Files.write(markerFile.toPath(), new byte[0]);
+                if (result.evictedFiles > 0) {
+                    LOGGER.lifecycle("Bazel disk cache at {}: {}", mCacheFolder, result);
+                } else {
+                    LOGGER.info("Bazel disk cache at {}: {}", mCacheFolder, result);
+                }
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to collect the Bazel disk cache at {}. Error: {}", mCacheFolder, e.getMessage());
+            }
+        }, "bazel-leaf-disk-cache-gc");
+        collectionThread.setDaemon(true);
+        collectionThread.setPriority(Thread.MIN_PRIORITY);
+        collectionThread.start();
+    }
+
+    /**
+     * Evicts the least recently used entries, until the cache is not larger than its maximum size.
+     */
+    public Result collect() throws IOException {
+        if (!mCacheFolder.isDirectory()) {
+            return new Result(0, 0, 0);
+        }
+
+        final List<CacheEntry> entries = new ArrayList<>();
+        Files.walkFileTree(mCacheFolder.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && !MARKER_FILE_NAME.equals(file.getFileName().toString())) {
+                    final long lastUsed = Math.max(attributes.lastAccessTime().toMillis(), attributes.lastModifiedTime().toMillis());
+                    entries.add(new CacheEntry(file, attributes.size(), lastUsed));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                //Bazel may have removed, or be replacing, the file.
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        long cacheSize = entries.stream().mapToLong(entry -> entry.size).sum();
+        int evictedFiles = 0;
+        long evictedBytes = 0;
+        if (cacheSize > mMaxSizeBytes) {
+            entries.sort(Comparator.comparingLong(entry -> entry.lastUsed));
+            for (CacheEntry entry : entries) {
+                if (cacheSize <= mMaxSizeBytes) {
+                    break;
+                }
+                if (Files.deleteIfExists(entry.path)) {
+                    cacheSize -= entry.size;
+                    evictedFiles++;
+                    evictedBytes += entry.size;
+                }
+            }
+        }
+        return new Result(evictedFiles, evictedBytes, cacheSize);
+    }
+
+    public static class Result {
+        public final int evictedFiles;
+        public final long evictedBytes;
+        public final long remainingBytes;
+
+        Result(int evictedFiles, long evictedBytes, long remainingBytes) {
+            this.evictedFiles = evictedFiles;
+            this.evictedBytes = evictedBytes;
+            this.remainingBytes = remainingBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "evicted %d entries (%d MB), %d MB remaining.",
+                    evictedFiles, evictedBytes >> 20, remainingBytes >> 20);
+        }
+    }
+
+    private static class CacheEntry {
+        final Path path;
+        final long size;
+        final long lastUsed;
+
+        CacheEntry(Path path, long size, long lastUsed) {
+            this.path = path;
+            this.size = size;
+            this.lastUsed = lastUsed;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A stderr consumer that picks Bazel's process summary (for example, `INFO: 7 processes: 2 remote cache hit, 5 linux-sandbox.`)
+ * out of a build's output, and reports how many of the build's processes were served by the disk cache.
+ */
+public class DiskCacheStats implements Consumer<String> {
+
+    private static final Pattern PROCESSES_PATTERN = Pattern.compile("^INFO: (\\d+) process(?:es)?(?:: (.*))?\\.?$");
+    //older versions report disk cache hits as remote ones.
+    private static final Pattern CACHE_HITS_PATTERN = Pattern.compile("(\\d+) (?:remote |disk )?cache hits?");
+
+    private final Logger mLogger;
+    private int mProcesses = -1;
+    private int mCacheHits;
+
+    public DiskCacheStats() {
+        this(Logging.getLogger(DiskCacheStats.class));
+    }
+
+    DiskCacheStats(Logger logger) {
+        mLogger = logger;
+    }
+
+    @Override
+    public void accept(String line) {
+        final Matcher processesMatcher = PROCESSES_PATTERN.matcher(line);
+        if (!processesMatcher.matches()) {
+            return;
+        }
+
+        mProcesses = Integer.parseInt(processesMatcher.group(1));
+        mCacheHits = 0;
+        if (processesMatcher.group(2) != null) {
+            final Matcher cacheHitsMatcher = CACHE_HITS_PATTERN.matcher(processesMatcher.group(2));
+            while (cacheHitsMatcher.find()) {
+                mCacheHits += Integer.parseInt(cacheHitsMatcher.group(1));
+            }
+        }
+        mLogger.lifecycle("Bazel disk cache: {} of {} processes were cache hits.", mCacheHits, mProcesses);
+    }
+
+    /**
+     * @return the number of processes the build reported, or -1 if it did not report a summary (yet).
+     */
+    public int getProcesses() {
+        return mProcesses;
+    }
+
+    public int getCacheHits() {
+        return mCacheHits;
+    }
+}
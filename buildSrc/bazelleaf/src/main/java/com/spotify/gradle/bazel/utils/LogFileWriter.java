@@ -0,0 +1,40 @@
+package com.spotify.gradle.bazel.utils;
+
+import com.google.common.io.Files;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * A line consumer that writes the full output of a process into a log file. Lines may arrive from several streams
+ * (stdout and stderr) concurrently.
+ */
+public class LogFileWriter implements Consumer<String>, Closeable {
+
+    private final Writer mWriter;
+
+    public LogFileWriter(File logFile) throws IOException {
+        Files.createParentDirs(logFile);
+        mWriter = Files.newWriter(logFile, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public synchronized void accept(String line) {
+        try {
+            mWriter.write(line);
+            mWriter.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mWriter.close();
+    }
+}
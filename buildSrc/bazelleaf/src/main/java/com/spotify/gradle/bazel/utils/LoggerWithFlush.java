@@ -4,7 +4,7 @@ import org.gradle.wrapper.Logger;
 
 /**
  * An implementation of {@link Logger} which also flush the output
- * immediately after writing to it.
+ * immediately after writing to it (for single characters, on every new line).
  */
 public class LoggerWithFlush extends Logger {
 
@@ -21,7 +21,10 @@ public class LoggerWithFlush extends Logger {
     @Override
     public Appendable append(char c) {
         super.append(c);
-        System.out.flush();
+        //flushing on every character would bring the console's throughput down to a crawl.
+        if (c == '\n') {
+            System.out.flush();
+        }
         return this;
     }
 
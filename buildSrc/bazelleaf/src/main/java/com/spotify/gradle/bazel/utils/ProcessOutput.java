@@ -0,0 +1,90 @@
+package com.spotify.gradle.bazel.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Reads a process' output stream in large chunks, decodes it incrementally and dispatches every complete line to
+ * the given consumers, as soon as it was read.
+ * <p>
+ * Only the last lines of the output are kept in memory (for error reporting), while the full output can be spilled
+ * into a log file (see {@link LogFileWriter}), so a verbose process does not grow the heap.
+ */
+public class ProcessOutput {
+
+    public static final int DEFAULT_TAIL_SIZE = 1000;
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final List<Consumer<String>> mLineConsumers;
+    private final int mTailSize;
+    private final Deque<String> mTail;
+
+    public ProcessOutput(Collection<Consumer<String>> lineConsumers, int tailSize) {
+        mLineConsumers = new ArrayList<>(lineConsumers);
+        mTailSize = tailSize;
+        mTail = new ArrayDeque<>(Math.min(tailSize, DEFAULT_TAIL_SIZE));
+    }
+
+    /**
+     * Reads the given stream until it ends.
+     */
+    public void pump(InputStream inputStream) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, Charset.defaultCharset()), CHUNK_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                addToTail(line);
+                for (Consumer<String> lineConsumer : mLineConsumers) {
+                    lineConsumer.accept(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the given stream, until it ends, on a dedicated thread.
+     *
+     * @return a future that completes once the stream ended.
+     */
+    public CompletableFuture<Void> pumpInBackground(InputStream inputStream, String name) {
+        final CompletableFuture<Void> pumped = new CompletableFuture<>();
+        final Thread pumpThread = new Thread(() -> {
+            try {
+                pump(inputStream);
+                pumped.complete(null);
+            } catch (IOException | RuntimeException e) {
+                pumped.completeExceptionally(e);
+            }
+        }, "bazel-leaf-" + name + "-pump");
+        pumpThread.setDaemon(true);
+        pumpThread.start();
+        return pumped;
+    }
+
+    /**
+     * @return the last lines of the output, up to the tail size.
+     */
+    public synchronized List<String> getTail() {
+        return new ArrayList<>(mTail);
+    }
+
+    private synchronized void addToTail(String line) {
+        if (mTailSize == 0) {
+            return;
+        }
+        if (mTail.size() == mTailSize) {
+            mTail.removeFirst();
+        }
+        mTail.addLast(line);
+    }
+
+}
@@ -0,0 +1,92 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A lock on a repository cache that is shared by several workspaces (checkouts, worktrees, and their Gradle daemons).
+ * <p>
+ * Bazel only looks an archive up in the repository cache before it downloads it, so two workspaces that fetch the same
+ * externals at the same time would both download all of them. Holding this lock while a Bazel run loads its packages
+ * (which is when it fetches) means that the second workspace waits, and then finds everything in the cache.
+ * Bazel's own writes into the cache are atomic, so the lock is released as soon as the run starts analysing.
+ */
+public class RepositoryFetchLock {
+
+    static final String LOCK_FILE_NAME = ".bazel-leaf-fetch.lock";
+
+    private static final Logger LOGGER = Logging.getLogger(RepositoryFetchLock.class);
+    //a JVM can not hold two locks on the same file, so builds in the same daemon wait on each other in-process.
+    private static final ConcurrentMap<String, Semaphore> IN_PROCESS_LOCKS = new ConcurrentHashMap<>();
+
+    private final File mRepositoryCacheFolder;
+
+    public RepositoryFetchLock(File repositoryCacheFolder) {
+        mRepositoryCacheFolder = repositoryCacheFolder;
+    }
+
+    /**
+     * Waits until the cache is not being fetched into by any other Bazel run, of this or of another process.
+     *
+     * @return the held lock. Closing it releases the lock, and can be done more than once, from any thread.
+     */
+    public Held acquire() throws IOException, InterruptedException {
+        Files.createDirectories(mRepositoryCacheFolder.toPath());
+        final File lockFile = new File(mRepositoryCacheFolder, LOCK_FILE_NAME);
+        final Semaphore inProcessLock = IN_PROCESS_LOCKS.computeIfAbsent(lockFile.getCanonicalPath(), path -> new Semaphore(1));
+        if (!inProcessLock.tryAcquire()) {
+            LOGGER.info("Waiting for another Bazel run to finish fetching into the repository cache at {}", mRepositoryCacheFolder);
+            inProcessLock.acquire();
+        }
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if (channel.tryLock() == null) {
+                LOGGER.lifecycle("Waiting for another Bazel workspace to finish fetching into the repository cache at {}", mRepositoryCacheFolder);
+                channel.lock();
+            }
+            return new Held(inProcessLock, channel);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            inProcessLock.release();
+            throw e;
+        }
+    }
+
+    public static class Held implements Closeable {
+        private final Semaphore mInProcessLock;
+        private final FileChannel mChannel;
+        private final AtomicBoolean mReleased = new AtomicBoolean(false);
+
+        Held(Semaphore inProcessLock, FileChannel channel) {
+            mInProcessLock = inProcessLock;
+            mChannel = channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (mReleased.compareAndSet(false, true)) {
+                try {
+                    //closing the channel releases its file lock.
+                    mChannel.close();
+                } finally {
+                    mInProcessLock.release();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.Project;
+import org.gradle.api.invocation.Gradle;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Holds objects that are shared by all the Bazel modules of a build.
+ * <p>
+ * Objects are kept per build invocation (its {@link Gradle} instance), from the first time they are asked for until the
+ * build finishes, when the whole scope is dropped, so they are not leaked into the next build that runs in the same
+ * Gradle daemon. A build that never reports it finished (for example, one created by ProjectBuilder in tests) keeps its
+ * scope, and with it its projects, for as long as the plugin's classes are loaded. They are not stored on the root
+ * project, so configuring a module never mutates another project's model, and modules may ask for them from any thread.
+ */
+public final class RootScope {
+
+    private static final Map<Gradle, Map<Class<?>, ScopedInstance>> BUILD_SCOPES = new ConcurrentHashMap<>();
+
+    private RootScope() {
+        /*A utility class. No need to create instances.*/
+    }
+
+    /**
+     * Returns the root-scoped instance of the given type, creating it using the given factory if needed.
+     * <p>
+     * The factory runs on the calling thread, without holding any lock, so it may ask for other root-scoped instances.
+     * Other threads that ask for the same type meanwhile, wait for it. If the factory fails, the failure is thrown to
+     * all of them, and the next call tries again.
+     *
+     * @throws IllegalStateException if the factory asks for the instance it is creating.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T get(Project project, Class<T> type, Supplier<T> factory) {
+        final Map<Class<?>, ScopedInstance> buildScope = getBuildScope(project.getGradle());
+        final ScopedInstance created = new ScopedInstance();
+        final ScopedInstance existing = buildScope.putIfAbsent(type, created);
+        if (existing != null) {
+            if (existing.creator == Thread.currentThread() && !existing.instance.isDone()) {
+                throw new IllegalStateException("The factory of " + type.getName() + " asked for the instance it is creating.");
+            }
+            return (T) existing.await();
+        }
+
+        try {
+            created.instance.complete(factory.get());
+        } catch (RuntimeException | Error e) {
+            buildScope.remove(type, created);
+            created.instance.completeExceptionally(e);
+            throw e;
+        }
+        return (T) created.await();
+    }
+
+    private static Map<Class<?>, ScopedInstance> getBuildScope(Gradle gradle) {
+        final Map<Class<?>, ScopedInstance> buildScope = BUILD_SCOPES.get(gradle);
+        if (buildScope != null) {
+            return buildScope;
+        }
+        final Map<Class<?>, ScopedInstance> newBuildScope = new ConcurrentHashMap<>();
+        final Map<Class<?>, ScopedInstance> existingBuildScope = BUILD_SCOPES.putIfAbsent(gradle, newBuildScope);
+        if (existingBuildScope != null) {
+            return existingBuildScope;
+        }
+        gradle.buildFinished(buildResult -> BUILD_SCOPES.remove(gradle));
+        return newBuildScope;
+    }
+
+    private static class ScopedInstance {
+        final Thread creator = Thread.currentThread();
+        final CompletableFuture<Object> instance = new CompletableFuture<>();
+
+        Object await() {
+            try {
+                return instance.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                } else if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -114,8 +114,11 @@ public class HatchejImlAction {
         return createNode("root", "url", path);
     }
 
-    @SuppressWarnings("unchecked")
-    public void modifyImlFile(final Project project, final HatchejModel hatchejModel) throws Exception {
+    /**
+     * Returns the module's IML file, or null if the module does not have one (not running within IntelliJ workspace).
+     */
+    @javax.annotation.Nullable
+    public File getImlFile(final Project project) {
         final File projectDir = project.getProjectDir().getAbsoluteFile();
 
         // backward-compatible with existing IML files using old name format
@@ -130,10 +133,19 @@ public class HatchejImlAction {
                     imlNameFile.getName(),
                     imlPathFile.getName(),
                     imlPathFile.getParentFile().getAbsolutePath());
+            return null;
+        }
+
+        return imlPathFile.exists() ? imlPathFile : imlNameFile;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void modifyImlFile(final Project project, final HatchejModel hatchejModel) throws Exception {
+        final File imlFile = getImlFile(project);
+        if (imlFile == null) {
             return; //not running within IntelliJ workspace
         }
 
-        final File imlFile = imlPathFile.exists() ? imlPathFile : imlNameFile;
         final Node imlRootNode = new XmlParser().parse(imlFile);
 
         final Node componentNode = xmlPath(imlRootNode, node -> node.name().equals("component") && "NewModuleRootManager".equals(node.attribute("name")));
@@ -2,6 +2,7 @@ package com.spotify.gradle.hatchej;
 
 import java.io.File;
 import java.util.HashSet;
+import java.util.Objects;
 import java.util.Set;
 
 public final class HatchejModel {
@@ -46,4 +47,29 @@ public final class HatchejModel {
     public Set<String> getProjectTestDependencies() {
         return mProjectTestDependencies;
     }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof HatchejModel)) {
+            return false;
+        }
+        final HatchejModel model = (HatchejModel) other;
+        return mExcludeFolders.equals(model.mExcludeFolders)
+                && mSourceFolders.equals(model.mSourceFolders)
+                && mTestSourceFolders.equals(model.mTestSourceFolders)
+                && mProjectOutputs.equals(model.mProjectOutputs)
+                && mProjectDependencies.equals(model.mProjectDependencies)
+                && mLibraryDependencies.equals(model.mLibraryDependencies)
+                && mProjectTestDependencies.equals(model.mProjectTestDependencies)
+                && mLibraryTestDependencies.equals(model.mLibraryTestDependencies);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(mExcludeFolders, mSourceFolders, mTestSourceFolders, mProjectOutputs,
+                mProjectDependencies, mLibraryDependencies, mProjectTestDependencies, mLibraryTestDependencies);
+    }
 }
@@ -0,0 +1,107 @@
+"""
+Reports everything bazel-leaf needs to know about a target in one pass: its rule kind,
+default outputs, source files, resource files and dependencies.
+
+The report is written into the `bazel_leaf_info` output group, as a `<target-name>.bazel-leaf-info` file
+next to the target's outputs. Each line in the file is a record, prefixed with the label it describes:
+//lib2:jar<KIND:>java_library
+//lib2:jar<OUT:>bazel-out/darwin_x86_64-fastbuild/bin/lib2/libjar.jar
+//lib2:jar<SRC:>lib2/src/main/java/com/spotify/music/lib2/Lib2.java
+//lib2:jar<RES:>lib2/src/main/resources/lib2.properties
+//lib2:jar<DEP:>@com_google_guava_guava//jar:jar<FILES:>[<source file external/com_google_guava_guava/jar/guava-20.0.jar>]
+//lib3:jar<DEP:>//lib4:jar<FILES:>[]
+//lib3:jar<VISITED:>//lib5:jar
+Each dep is reported once per target. Only external deps list their files; local modules are reported by label.
+The local targets the aspect visited through exports and runtime_deps are reported too, since their BUILD files
+define some of the target's deps.
+The aspect also runs over the deps, and their reports are part of the output group as well, so one run reports the
+target's whole local dependency graph. External targets (and //third_party ones) get no report of their own.
+Labels and paths can not contain new-lines, so records are never split.
+"""
+
+BazelLeafDepsInfo = provider(fields = ["deps", "visited", "info_files"])
+
+def _target_label(target):
+    return "//{}:{}".format(target.label.package, target.label.name)
+
+def _attr_list(ctx, attr_name):
+    if hasattr(ctx.rule.attr, attr_name):
+        return getattr(ctx.rule.attr, attr_name) or []
+    return []
+
+def _is_local_module(label):
+    return label.workspace_root == "" and label.package != "third_party"
+
+def _dep_record(dep):
+    # the plugin only needs the files of external deps (their jars); a local module dep is referenced by its label.
+    if _is_local_module(dep.label):
+        return "{}<FILES:>[]".format(dep.label)
+    return "{}<FILES:>{}".format(dep.label, dep.files.to_list())
+
+def _aspect_impl(target, ctx):
+    # the aspect also visits exports and runtime_deps, their deps are reported as deps of this target.
+    # A depset keeps each dep once, however many export paths reach it, and shares the propagated deps between
+    # targets instead of copying them.
+    propagating = [
+        propagated
+        for propagated in _attr_list(ctx, "exports") + _attr_list(ctx, "runtime_deps")
+        if BazelLeafDepsInfo in propagated
+    ]
+    deps = depset(
+        direct = [_dep_record(dep) for dep in _attr_list(ctx, "deps") + _attr_list(ctx, "runtime_deps")],
+        transitive = [propagated[BazelLeafDepsInfo].deps for propagated in propagating],
+    )
+
+    # the visited targets' BUILD files define some of the deps above, so the plugin's cached report depends on them.
+    visited = depset(
+        direct = [_target_label(propagated) for propagated in propagating if propagated.label.workspace_root == ""],
+        transitive = [propagated[BazelLeafDepsInfo].visited for propagated in propagating],
+    )
+
+    deps_info_files = [
+        dep[BazelLeafDepsInfo].info_files
+        for dep in _attr_list(ctx, "deps") + _attr_list(ctx, "exports") + _attr_list(ctx, "runtime_deps")
+        if BazelLeafDepsInfo in dep
+    ]
+    if not _is_local_module(target.label):
+        return [
+            BazelLeafDepsInfo(deps = deps, visited = visited, info_files = depset(transitive = deps_info_files)),
+        ]
+
+    label = _target_label(target)
+    records = ["{}<KIND:>{}".format(label, ctx.rule.kind)]
+
+    for f in target.files:
+        records.append("{}<OUT:>{}".format(label, f.path))
+
+    for src in _attr_list(ctx, "srcs"):
+        for f in src.files:
+            records.append("{}<SRC:>{}".format(label, f.path))
+
+    for resource in _attr_list(ctx, "resources") + _attr_list(ctx, "resource_files") + _attr_list(ctx, "assets"):
+        for f in resource.files:
+            records.append("{}<RES:>{}".format(label, f.path))
+
+    if hasattr(ctx.rule.attr, "manifest") and ctx.rule.attr.manifest:
+        for f in ctx.rule.attr.manifest.files:
+            records.append("{}<RES:>{}".format(label, f.path))
+
+    for dep in deps.to_list():
+        records.append("{}<DEP:>{}".format(label, dep))
+
+    for visited_label in visited.to_list():
+        records.append("{}<VISITED:>{}".format(label, visited_label))
+
+    info_file = ctx.actions.declare_file(target.label.name + ".bazel-leaf-info")
+    ctx.actions.write(info_file, "\n".join(records) + "\n")
+    info_files = depset([info_file], transitive = deps_info_files)
+
+    return [
+        BazelLeafDepsInfo(deps = deps, visited = visited, info_files = info_files),
+        OutputGroupInfo(bazel_leaf_info = info_files),
+    ]
+
+target_info_aspect = aspect(
+    implementation = _aspect_impl,
+    attr_aspects = ["deps", "exports", "runtime_deps"],
+)
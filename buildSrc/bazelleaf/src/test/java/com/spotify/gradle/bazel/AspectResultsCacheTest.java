@@ -0,0 +1,131 @@
+package com.spotify.gradle.bazel;
+
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class AspectResultsCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final List<String> LIB2_RECORDS = Arrays.asList(
+            "//lib2:jar<KIND:>java_library",
+            "//lib2:jar<SRC:>lib2/src/main/java/com/spotify/music/lib2/Lib2.java",
+            "//lib2:jar<DEP:>//lib4:jar<FILES:>[<generated file lib4/libjar.jar>]");
+
+    private AspectResultsCache createCache(File workspace) throws Exception {
+        return new AspectResultsCache(new File(workspace, "build/cache"), workspace, new File(workspace, "bazel"),
+                BazelAspectService.TARGET_INFO_ASPECT, new DaemonModelCache(workspace));
+    }
+
+    private File createWorkspace() throws Exception {
+        final File workspace = temporaryFolder.newFolder();
+        FileUtils.write(new File(workspace, "WORKSPACE"), "", StandardCharsets.UTF_8);
+        FileUtils.write(new File(workspace, "lib2/BUILD.bazel"), "java_library(name = 'jar')", StandardCharsets.UTF_8);
+        FileUtils.write(new File(workspace, "lib4/BUILD.bazel"), "java_library(name = 'jar')", StandardCharsets.UTF_8);
+        return workspace;
+    }
+
+    @Test
+    public void testMissingEntry() throws Exception {
+        assertThat(createCache(createWorkspace()).load("//lib2:jar"), IsNull.nullValue());
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        final File workspace = createWorkspace();
+        createCache(workspace).store("//lib2:jar", LIB2_RECORDS);
+
+        assertThat(createCache(workspace).load("//lib2:jar"), IsEqual.equalTo(LIB2_RECORDS));
+    }
+
+    @Test
+    public void testStoreAndLoadEmptyRecords() throws Exception {
+        final File workspace = createWorkspace();
+        createCache(workspace).store("//lib2:jar", Collections.emptyList());
+
+        assertThat(createCache(workspace).load("//lib2:jar"), Matchers.empty());
+    }
+
+    @Test
+    public void testDependencyBuildFileChangeInvalidatesEntry() throws Exception {
+        final File workspace = createWorkspace();
+        createCache(workspace).store("//lib2:jar", LIB2_RECORDS);
+        createCache(workspace).store("//lib4:jar", Collections.singletonList("//lib4:jar<KIND:>java_library"));
+
+        FileUtils.write(new File(workspace, "lib4/BUILD.bazel"), "java_library(name = 'jar', deps = [])", StandardCharsets.UTF_8);
+
+        final AspectResultsCache cache = createCache(workspace);
+        assertThat(cache.load("//lib2:jar"), IsNull.nullValue());
+        assertThat(cache.load("//lib4:jar"), IsNull.nullValue());
+    }
+
+    @Test
+    public void testUnrelatedBuildFileChangeKeepsEntry() throws Exception {
+        final File workspace = createWorkspace();
+        createCache(workspace).store("//lib4:jar", Collections.singletonList("//lib4:jar<KIND:>java_library"));
+
+        FileUtils.write(new File(workspace, "lib2/BUILD.bazel"), "java_library(name = 'jar', deps = [])", StandardCharsets.UTF_8);
+
+        assertThat(createCache(workspace).load("//lib4:jar"), Matchers.contains("//lib4:jar<KIND:>java_library"));
+    }
+
+    @Test
+    public void testLoadedExtensionChangeInvalidatesEntry() throws Exception {
+        final File workspace = createWorkspace();
+        FileUtils.write(new File(workspace, "tools/defs.bzl"), "def macro():\n    pass\n", StandardCharsets.UTF_8);
+        FileUtils.write(new File(workspace, "lib4/BUILD.bazel"), "load(\"//tools:defs.bzl\", \"macro\")\njava_library(name = 'jar')", StandardCharsets.UTF_8);
+        createCache(workspace).store("//lib4:jar", Collections.singletonList("//lib4:jar<KIND:>java_library"));
+
+        FileUtils.write(new File(workspace, "tools/defs.bzl"), "def macro():\n    return None\n", StandardCharsets.UTF_8);
+
+        assertThat(createCache(workspace).load("//lib4:jar"), IsNull.nullValue());
+    }
+
+    @Test
+    public void testVisitedTargetBuildFileChangeInvalidatesEntry() throws Exception {
+        final File workspace = createWorkspace();
+        FileUtils.write(new File(workspace, "lib5/BUILD.bazel"), "java_library(name = 'jar', exports = ['//lib4:jar'])", StandardCharsets.UTF_8);
+        final DaemonModelCache daemonModelCache = new DaemonModelCache(workspace);
+        //lib2 exports lib5, which exports lib4. The DEP record of lib4 comes from lib5's BUILD file.
+        final List<String> records = Arrays.asList(
+                "//lib2:jar<KIND:>java_library",
+                "//lib2:jar<DEP:>//lib4:jar<FILES:>[]",
+                "//lib2:jar<VISITED:>//lib5:jar");
+        new AspectResultsCache(new File(workspace, "build/cache"), workspace, new File(workspace, "bazel"),
+                BazelAspectService.TARGET_INFO_ASPECT, daemonModelCache).store("//lib2:jar", records);
+
+        final File visitedBuildFile = new File(workspace, "lib5/BUILD.bazel");
+        FileUtils.write(visitedBuildFile, "java_library(name = 'jar', exports = [])", StandardCharsets.UTF_8);
+        //a different timestamp, even on file systems with a coarse one.
+        visitedBuildFile.setLastModified(visitedBuildFile.lastModified() + 10_000);
+
+        assertThat(createCache(workspace).load("//lib2:jar"), IsNull.nullValue());
+        //the daemon's entry is dropped too.
+        assertThat(daemonModelCache.getTargetRecords("//lib2:jar"), IsNull.nullValue());
+    }
+
+    @Test
+    public void testWorkspaceChangeInvalidatesEntry() throws Exception {
+        final File workspace = createWorkspace();
+        createCache(workspace).store("//lib4:jar", Collections.singletonList("//lib4:jar<KIND:>java_library"));
+
+        FileUtils.write(new File(workspace, "WORKSPACE"), "android_sdk_repository(name = 'android_sdk')", StandardCharsets.UTF_8);
+
+        assertThat(createCache(workspace).load("//lib4:jar"), IsNull.nullValue());
+    }
+}
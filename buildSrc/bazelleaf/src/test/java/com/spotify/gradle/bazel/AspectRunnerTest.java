@@ -0,0 +1,112 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.bazel.utils.BazelExecHelper;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class AspectRunnerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testDeploysTheAspectsIntoAPackageNamedAfterTheirContent() throws Exception {
+        final String aspectsPackage = AspectRunner.deployAspects(temporaryFolder.getRoot());
+
+        assertThat(aspectsPackage.matches("build/bazel_aspects/[0-9a-f]{16}"), IsEqual.equalTo(true));
+        final File aspectsFolder = new File(temporaryFolder.getRoot(), aspectsPackage);
+        assertThat(new File(aspectsFolder, "BUILD.bazel").isFile(), IsEqual.equalTo(true));
+        assertThat(new File(aspectsFolder, BazelAspectService.TARGET_INFO_ASPECT).isFile(), IsEqual.equalTo(true));
+        assertThat(AspectRunner.deployAspects(temporaryFolder.newFolder()), IsEqual.equalTo(aspectsPackage));
+    }
+
+    @Test
+    public void testDoesNotRewriteDeployedAspects() throws Exception {
+        final File aspectsFolder = new File(temporaryFolder.getRoot(), AspectRunner.deployAspects(temporaryFolder.getRoot()));
+        final File aspectRule = new File(aspectsFolder, BazelAspectService.TARGET_INFO_ASPECT);
+        Files.write(aspectRule.toPath(), "#existing".getBytes(StandardCharsets.UTF_8));
+
+        AspectRunner.deployAspects(temporaryFolder.getRoot());
+
+        assertThat(Files.readAllLines(aspectRule.toPath()), IsEqual.equalTo(Collections.singletonList("#existing")));
+        final List<String> aspectsFiles = Arrays.asList(aspectsFolder.list());
+        assertThat(aspectsFiles.size(), IsEqual.equalTo(2));
+    }
+
+    @Test
+    public void testRunsTheAspectByItsLabel() throws Exception {
+        final BazelExecHelper bazelExecHelper = mock(BazelExecHelper.class);
+        final BazelExecHelper.BazelExec bazelExec = mock(BazelExecHelper.BazelExec.class);
+        doReturn(bazelExec).when(bazelExecHelper).createBazelRun(anyBoolean(), any(), anyList(), anyString(), any());
+        final BazelLeafConfig.Decorated config = createConfig();
+
+        new AspectRunner(config, bazelExecHelper).getAspectResult(BazelAspectService.TARGET_INFO_ASPECT, "target_info_aspect",
+                Collections.singletonList("//lib2:jar"));
+
+        final String aspectsPackage = AspectRunner.deployAspects(temporaryFolder.getRoot());
+        verify(bazelExecHelper).createBazelRun(eq(false), eq(config), eq(Collections.singletonList("//lib2:jar")), eq("build"),
+                eq("--output_groups=bazel_leaf_info"), eq("--aspects"), eq("//" + aspectsPackage + ":get_target_info.bzl%target_info_aspect"));
+    }
+
+    @Test
+    public void testReadsTheResultsOfTheLocalDependencies() throws Exception {
+        final BazelExecHelper bazelExecHelper = mock(BazelExecHelper.class);
+        doReturn(mock(BazelExecHelper.BazelExec.class)).when(bazelExecHelper).createBazelRun(anyBoolean(), any(), anyList(), anyString(), any());
+        final BazelLeafConfig.Decorated config = createConfig();
+        final File binFolder = new File(config.buildOutputDir, "bin");
+        writeResultFile(new File(binFolder, "lib2/jar.bazel-leaf-info"),
+                "//lib2:jar<KIND:>java_library",
+                "//lib2:jar<DEP:>//lib4:jar<FILES:>[]",
+                "//lib2:jar<DEP:>@com_google_guava_guava//jar:jar<FILES:>[<source file external/com_google_guava_guava/jar/guava-20.0.jar>]");
+        writeResultFile(new File(binFolder, "lib4/jar.bazel-leaf-info"),
+                "//lib4:jar<KIND:>java_library",
+                "//lib4:jar<DEP:>//lib2:jar<FILES:>[]");
+
+        final List<String> records = new AspectRunner(config, bazelExecHelper).getAspectResult(BazelAspectService.TARGET_INFO_ASPECT,
+                "target_info_aspect", Collections.singletonList("//lib2:jar"));
+
+        //each report is read once, even if the targets depend on each other.
+        assertThat(records, IsEqual.equalTo(Arrays.asList(
+                "//lib2:jar<KIND:>java_library",
+                "//lib2:jar<DEP:>//lib4:jar<FILES:>[]",
+                "//lib2:jar<DEP:>@com_google_guava_guava//jar:jar<FILES:>[<source file external/com_google_guava_guava/jar/guava-20.0.jar>]",
+                "//lib4:jar<KIND:>java_library",
+                "//lib4:jar<DEP:>//lib2:jar<FILES:>[]")));
+    }
+
+    private static void writeResultFile(File resultFile, String... records) throws Exception {
+        Files.createDirectories(resultFile.getParentFile().toPath());
+        Files.write(resultFile.toPath(), Arrays.asList(records), StandardCharsets.UTF_8);
+    }
+
+    private BazelLeafConfig.Decorated createConfig() {
+        return new BazelLeafConfig.Decorated(
+                "bazelBin",
+                "//lib2",
+                "jar",
+                "",
+                temporaryFolder.getRoot(),
+                new File(temporaryFolder.getRoot(), "bazel-build").getAbsolutePath());
+    }
+}
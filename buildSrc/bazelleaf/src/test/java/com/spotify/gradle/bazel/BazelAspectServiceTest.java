@@ -0,0 +1,208 @@
+package com.spotify.gradle.bazel;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Project;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UseAssertThatThrowingInstead"})
+public class BazelAspectServiceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testParseSeveralTargets() {
+        Map<String, BazelAspectService.TargetInfo> targetInfos = BazelAspectService.parseTargetInfos(Arrays.asList(
+                "//lib2:jar<KIND:>java_library",
+                "//lib2:jar<OUT:>bazel-out/darwin_x86_64-fastbuild/bin/lib2/libjar.jar",
+                "//lib2:jar<SRC:>lib2/src/main/java/com/spotify/music/lib2/Lib2.java",
+                "//lib2:jar<DEP:>//lib4:jar<FILES:>[<generated file lib4/libjar.jar>]",
+                "//lib2:AllTests<KIND:>java_test",
+                "//lib2:AllTests<DEP:>//lib2:jar<FILES:>[<generated file lib2/libjar.jar>]"));
+
+        assertThat(targetInfos.size(), IsEqual.equalTo(2));
+
+        BazelAspectService.TargetInfo jar = targetInfos.get("//lib2:jar");
+        assertThat(jar.kind, IsEqual.equalTo("java_library"));
+        assertThat(jar.outputs, Matchers.contains("bazel-out/darwin_x86_64-fastbuild/bin/lib2/libjar.jar"));
+        assertThat(jar.sourceFiles, Matchers.contains("lib2/src/main/java/com/spotify/music/lib2/Lib2.java"));
+        assertThat(jar.deps, Matchers.contains("//lib4:jar<FILES:>[<generated file lib4/libjar.jar>]"));
+
+        BazelAspectService.TargetInfo tests = targetInfos.get("//lib2:AllTests");
+        assertThat(tests.kind, IsEqual.equalTo("java_test"));
+        assertThat(tests.outputs, Matchers.empty());
+        assertThat(tests.deps, Matchers.contains("//lib2:jar<FILES:>[<generated file lib2/libjar.jar>]"));
+    }
+
+    @Test
+    public void testTransitiveModuleDepsFollowOnlyKnownTargets() {
+        final AspectRunner aspectRunner = mock(AspectRunner.class);
+        doReturn(Arrays.asList(
+                "//lib3:jar<KIND:>java_library",
+                "//lib3:jar<DEP:>//lib4:jar<FILES:>[<generated file lib4/libjar.jar>]",
+                "//lib4:jar<KIND:>java_library",
+                "//lib4:jar<DEP:>//lib5:jar<FILES:>[<generated file lib5/libjar.jar>]"))
+                .when(aspectRunner).getAspectResult(anyString(), anyString(), anyList());
+        final BazelAspectService service = new BazelAspectService(mock(Project.class), aspectRunner, mock(AspectResultsCache.class));
+        service.registerTargets(Arrays.asList("//lib3:jar", "//lib4:jar"));
+
+        assertThat(service.getTransitiveModuleDeps("//lib3:jar"), Matchers.contains("//lib4:jar", "//lib5:jar"));
+        assertThat(service.getTransitiveModuleDeps("//lib4:jar"), Matchers.contains("//lib5:jar"));
+        //lib5 is not a registered target, so it was not queried.
+        verify(aspectRunner, times(1)).getAspectResult(anyString(), anyString(), anyList());
+    }
+
+    @Test
+    public void testReportedDependenciesNeedNoOtherAspectRun() {
+        final AspectRunner aspectRunner = mock(AspectRunner.class);
+        final List<String> lib4Records = Arrays.asList(
+                "//lib4:jar<KIND:>java_library",
+                "//lib4:jar<SRC:>lib4/src/main/java/Lib4.java");
+        final List<String> records = new ArrayList<>(Arrays.asList(
+                "//lib3:jar<KIND:>java_library",
+                "//lib3:jar<DEP:>//lib4:jar<FILES:>[]"));
+        //the aspect also reported the target lib3 depends on.
+        records.addAll(lib4Records);
+        doReturn(records).when(aspectRunner).getAspectResult(anyString(), anyString(), anyList());
+        final AspectResultsCache resultsCache = mock(AspectResultsCache.class);
+        final BazelAspectService service = new BazelAspectService(mock(Project.class), aspectRunner, resultsCache);
+        service.registerTargets(Collections.singletonList("//lib3:jar"));
+        assertThat(service.getReportedModuleDeps("//lib3:jar"), Matchers.empty());
+
+        service.getAllDeps("//lib3:jar");
+        //lib3's module requires lib4's module.
+        service.registerTargets(Collections.singletonList("//lib4:jar"));
+
+        assertThat(service.getReportedModuleDeps("//lib3:jar"), Matchers.contains("//lib4:jar"));
+        assertThat(service.getRuleKind("//lib4:jar"), IsEqual.equalTo(Optional.of("java_library")));
+        verify(aspectRunner, times(1)).getAspectResult(anyString(), anyString(), eq(Collections.singletonList("//lib3:jar")));
+        verify(resultsCache).store("//lib4:jar", lib4Records);
+    }
+
+    @Test
+    public void testBuildInputFiles() throws Exception {
+        final File workspace = temporaryFolder.getRoot();
+        FileUtils.write(new File(workspace, "lib3/BUILD"), "load(\"//tools:defs.bzl\", \"lib\")\n", StandardCharsets.UTF_8);
+        FileUtils.write(new File(workspace, "lib4/BUILD.bazel"), "", StandardCharsets.UTF_8);
+        final AspectRunner aspectRunner = mock(AspectRunner.class);
+        doReturn(Arrays.asList(
+                "//lib3:jar<KIND:>java_library",
+                "//lib3:jar<SRC:>lib3/src/main/java/Lib3.java",
+                "//lib3:jar<SRC:>bazel-out/k8-fastbuild/genfiles/lib3/Generated.java",
+                "//lib3:jar<RES:>lib3/src/main/resources/lib3.properties",
+                "//lib3:jar<DEP:>//lib4:jar<FILES:>[<generated file lib4/libjar.jar>]",
+                "//lib4:jar<KIND:>java_library",
+                "//lib4:jar<SRC:>lib4/src/main/java/Lib4.java"))
+                .when(aspectRunner).getAspectResult(anyString(), anyString(), anyList());
+        final Project project = mock(Project.class);
+        doReturn(workspace).when(project).getProjectDir();
+        final BazelAspectService service = new BazelAspectService(project, aspectRunner, mock(AspectResultsCache.class));
+        service.registerTargets(Arrays.asList("//lib3:jar", "//lib4:jar"));
+
+        assertThat(service.getBuildInputFiles("//lib3:jar"), Matchers.containsInAnyOrder(
+                new File(workspace, "lib3/src/main/java/Lib3.java"),
+                new File(workspace, "lib3/src/main/resources/lib3.properties"),
+                new File(workspace, "lib3/BUILD"),
+                new File(workspace, "tools/defs.bzl"),
+                new File(workspace, "lib4/src/main/java/Lib4.java"),
+                new File(workspace, "lib4/BUILD.bazel")));
+    }
+
+    @Test
+    public void testBuildInputFilesOfDeferredDependency() throws Exception {
+        final File workspace = temporaryFolder.getRoot();
+        FileUtils.write(new File(workspace, "lib3/BUILD"), "", StandardCharsets.UTF_8);
+        FileUtils.write(new File(workspace, "lib4/BUILD"), "", StandardCharsets.UTF_8);
+        final AspectRunner aspectRunner = mock(AspectRunner.class);
+        doReturn(Arrays.asList(
+                "//lib3:jar<KIND:>java_library",
+                "//lib3:jar<SRC:>lib3/src/main/java/Lib3.java",
+                "//lib3:jar<DEP:>//lib4:jar<FILES:>[<generated file lib4/libjar.jar>]"))
+                .when(aspectRunner).getAspectResult(anyString(), anyString(), eq(Collections.singletonList("//lib3:jar")));
+        doReturn(Arrays.asList(
+                "//lib4:jar<KIND:>java_library",
+                "//lib4:jar<SRC:>lib4/src/main/java/Lib4.java"))
+                .when(aspectRunner).getAspectResult(anyString(), anyString(), eq(Collections.singletonList("//lib4:jar")));
+        final Project project = mock(Project.class);
+        doReturn(workspace).when(project).getProjectDir();
+        final BazelAspectService service = new BazelAspectService(project, aspectRunner, mock(AspectResultsCache.class));
+        //only lib3 was requested, lib4 is registered once lib3 requires it.
+        service.registerTargets(Collections.singletonList("//lib3:jar"));
+        service.getAllDeps("//lib3:jar");
+        service.registerTargets(Collections.singletonList("//lib4:jar"));
+
+        assertThat(service.getBuildInputFiles("//lib3:jar"), Matchers.containsInAnyOrder(
+                new File(workspace, "lib3/src/main/java/Lib3.java"),
+                new File(workspace, "lib3/BUILD"),
+                new File(workspace, "lib4/src/main/java/Lib4.java"),
+                new File(workspace, "lib4/BUILD")));
+        assertThat(service.getBuildInputFolders("//lib3:jar"), Matchers.contains(new File(workspace, "lib3"), new File(workspace, "lib4")));
+    }
+
+    @Test
+    public void testBuildInputFolders() {
+        final File workspace = temporaryFolder.getRoot();
+        final AspectRunner aspectRunner = mock(AspectRunner.class);
+        doReturn(Arrays.asList(
+                "//lib3:jar<KIND:>java_library",
+                "//lib3:jar<DEP:>//lib4/inner:jar<FILES:>[<generated file lib4/inner/libjar.jar>]",
+                "//lib4/inner:jar<KIND:>java_library"))
+                .when(aspectRunner).getAspectResult(anyString(), anyString(), anyList());
+        final Project project = mock(Project.class);
+        doReturn(workspace).when(project).getProjectDir();
+        final BazelAspectService service = new BazelAspectService(project, aspectRunner, mock(AspectResultsCache.class));
+        service.registerTargets(Arrays.asList("//lib3:jar", "//lib4/inner:jar"));
+
+        assertThat(service.getBuildInputFolders("//lib3:jar"), Matchers.contains(new File(workspace, "lib3"), new File(workspace, "lib4/inner")));
+        assertThat(service.getBuildInputFolders("//lib5:jar"), Matchers.contains(new File(workspace, "lib5")));
+    }
+
+    @Test
+    public void testBuildInputFilesOfUnknownDependency() {
+        final AspectRunner aspectRunner = mock(AspectRunner.class);
+        doReturn(Arrays.asList(
+                "//lib3:jar<KIND:>java_library",
+                "//lib3:jar<DEP:>//lib5:jar<FILES:>[<generated file lib5/libjar.jar>]"))
+                .when(aspectRunner).getAspectResult(anyString(), anyString(), anyList());
+        final Project project = mock(Project.class);
+        doReturn(temporaryFolder.getRoot()).when(project).getProjectDir();
+        final BazelAspectService service = new BazelAspectService(project, aspectRunner, mock(AspectResultsCache.class));
+
+        assertThat(service.getBuildInputFiles("//lib3:jar"), IsNull.nullValue());
+        assertThat(service.getBuildInputFolders("//lib3:jar"), IsNull.nullValue());
+    }
+
+    @Test
+    public void testParseUnknownAnnotation() {
+        try {
+            BazelAspectService.parseTargetInfos(Collections.singletonList("//lib2:jar<SOMETHING:>value"));
+            fail("Should have thrown an exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), IsEqual.equalTo("the aspect output '//lib2:jar<SOMETHING:>value' does not match any known annotations."));
+        }
+    }
+}
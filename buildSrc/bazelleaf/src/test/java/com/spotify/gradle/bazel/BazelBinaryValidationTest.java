@@ -0,0 +1,70 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.bazel.utils.BazelBinaryStamp;
+
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsEqual;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UseAssertThatThrowingInstead"})
+public class BazelBinaryValidationTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File createBinary() throws Exception {
+        final File binary = temporaryFolder.newFile("bazel");
+        FileUtils.write(binary, "bazel binary", StandardCharsets.UTF_8);
+        return binary;
+    }
+
+    @Test
+    public void testProbesAndStampsUnknownBinary() throws Exception {
+        final File binary = createBinary();
+        final AtomicInteger probes = new AtomicInteger();
+
+        final BazelBinaryValidation validation = BazelBinaryValidation.start(binary.getPath(), () -> probes.incrementAndGet() > 0);
+
+        assertThat(validation.isDone(), Is.is(true));
+        validation.await();
+        assertThat(probes.get(), IsEqual.equalTo(1));
+        assertThat(new BazelBinaryStamp(binary).isUpToDate(), Is.is(true));
+    }
+
+    @Test
+    public void testSkipsProbeForStampedBinary() throws Exception {
+        final File binary = createBinary();
+        new BazelBinaryStamp(binary).write();
+        final AtomicInteger probes = new AtomicInteger();
+
+        BazelBinaryValidation.start(binary.getPath(), () -> probes.incrementAndGet() > 0).await();
+
+        assertThat(probes.get(), IsEqual.equalTo(0));
+    }
+
+    @Test
+    public void testChangedBinaryIsProbedAgain() throws Exception {
+        final File binary = createBinary();
+        new BazelBinaryStamp(binary).write();
+        FileUtils.write(binary, "another bazel binary", StandardCharsets.UTF_8);
+
+        final BazelBinaryValidation validation = BazelBinaryValidation.start(binary.getPath(), () -> false);
+        try {
+            validation.await();
+            fail("Should have thrown an exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), IsEqual.equalTo(String.format("Bazel binary at %s is invalid, and was unable to download a valid binary.", binary.getPath())));
+        }
+        assertThat(new BazelBinaryStamp(binary).exists(), Is.is(false));
+    }
+}
@@ -0,0 +1,96 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.bazel.utils.BazelExecHelper;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Properties;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UseAssertThatThrowingInstead"})
+public class BazelInfoTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private BazelLeafConfig.Decorated createConfig() throws Exception {
+        return new BazelLeafConfig.Decorated(
+                "bazelBin",
+                "//lib2",
+                "jar",
+                null,
+                temporaryFolder.getRoot(),
+                "build/bazel_output/");
+    }
+
+    private static BazelExecHelper createBazelExecHelper() {
+        final Properties properties = new Properties();
+        properties.setProperty("bazel-bin", "/tmp/execroot/bin");
+        properties.setProperty("output_base", "/tmp/output_base");
+        properties.setProperty("release", "release 0.11.1");
+        final BazelExecHelper bazelExecHelper = mock(BazelExecHelper.class);
+        when(bazelExecHelper.getInfo(any(BazelLeafConfig.Decorated.class), eq(BazelInfo.INFO_KEYS))).thenReturn(properties);
+        return bazelExecHelper;
+    }
+
+    @Test
+    public void testQueriesOnlyUsedKeys() throws Exception {
+        final BazelLeafConfig.Decorated config = createConfig();
+        final BazelExecHelper bazelExecHelper = createBazelExecHelper();
+
+        final BazelInfo bazelInfo = BazelInfo.loadOrQuery(new File(temporaryFolder.getRoot(), "info.properties"), "key", config, bazelExecHelper);
+
+        assertThat(bazelInfo.bazelBin, IsEqual.equalTo(new File("/tmp/execroot/bin")));
+        assertThat(bazelInfo.outputBase, IsEqual.equalTo(new File("/tmp/output_base")));
+        assertThat(bazelInfo.release, IsEqual.equalTo("release 0.11.1"));
+        verify(bazelExecHelper).getInfo(config, BazelInfo.INFO_KEYS);
+    }
+
+    @Test
+    public void testPersistedInfoIsUsedForSameKey() throws Exception {
+        final BazelLeafConfig.Decorated config = createConfig();
+        final BazelExecHelper bazelExecHelper = createBazelExecHelper();
+        final File persistedInfoFile = new File(temporaryFolder.getRoot(), "info.properties");
+
+        BazelInfo.loadOrQuery(persistedInfoFile, "key", config, bazelExecHelper);
+        final BazelInfo bazelInfo = BazelInfo.loadOrQuery(persistedInfoFile, "key", config, bazelExecHelper);
+
+        assertThat(bazelInfo.outputBase, IsEqual.equalTo(new File("/tmp/output_base")));
+        verify(bazelExecHelper, times(1)).getInfo(config, BazelInfo.INFO_KEYS);
+
+        BazelInfo.loadOrQuery(persistedInfoFile, "other-key", config, bazelExecHelper);
+        verify(bazelExecHelper, times(2)).getInfo(config, BazelInfo.INFO_KEYS);
+    }
+
+    @Test
+    public void testStartupOptionsChangeCacheKey() throws Exception {
+        final BazelLeafConfig.Decorated config = createConfig();
+
+        assertThat(BazelInfo.getCacheKey(config, Collections.emptyList()),
+                IsEqual.equalTo(BazelInfo.getCacheKey(config, Collections.emptyList())));
+        assertThat(BazelInfo.getCacheKey(config, Collections.emptyList()).equals(
+                BazelInfo.getCacheKey(config, Collections.singletonList("--output_user_root=/tmp/bazel"))), IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testMissingKeyFails() throws Exception {
+        try {
+            BazelInfo.fromProperties(new Properties());
+            org.junit.Assert.fail("Should have thrown an exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), IsEqual.equalTo("bazel info did not report 'bazel-bin'."));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.spotify.gradle.bazel;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BazelLeafConfigTest {
+
+    @Test
+    public void testDecoratedIsSerializable() throws Exception {
+        final BazelLeafConfig.Decorated config = new BazelLeafConfig.Decorated(
+                "bazelBin",
+                "//targetPath",
+                "targetName",
+                "testTargetName",
+                new File("workspaceDir"),
+                "outputDir",
+                new File("/tmp/disk-cache"),
+                1024,
+                new File("/tmp/repository-cache"),
+                Collections.singletonList("--max_idle_secs=600"),
+                Arrays.asList("-c", "opt"));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(config);
+        }
+        final BazelLeafConfig.Decorated read;
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (BazelLeafConfig.Decorated) input.readObject();
+        }
+
+        assertThat(read.getTargetLabel(), IsEqual.equalTo("//targetPath:targetName"));
+        assertThat(read.workspaceRootFolder, IsEqual.equalTo(new File("workspaceDir")));
+        assertThat(read.diskCacheMaxSizeBytes, IsEqual.equalTo(1024L));
+        assertThat(read.startupOptions, IsEqual.equalTo(Collections.singletonList("--max_idle_secs=600")));
+        assertThat(read.buildFlags, IsEqual.equalTo(Arrays.asList("-c", "opt")));
+    }
+
+    @Test
+    public void testDiskCacheMaxSize() {
+        final BazelLeafConfig.DiskCache diskCache = new BazelLeafConfig.DiskCache();
+        diskCache.setMaxSize("500M");
+        assertThat(diskCache.getMaxSizeBytes(), IsEqual.equalTo(500L << 20));
+        diskCache.setMaxSize("2048");
+        assertThat(diskCache.getMaxSizeBytes(), IsEqual.equalTo(2048L));
+    }
+}
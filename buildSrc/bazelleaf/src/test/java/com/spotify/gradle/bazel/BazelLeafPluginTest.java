@@ -0,0 +1,82 @@
+package com.spotify.gradle.bazel;
+
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Project;
+import org.gradle.api.file.FileCollection;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BazelLeafPluginTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testFileAddedToAGlobbedPackageIsABuildInput() throws Exception {
+        final File workspace = temporaryFolder.getRoot();
+        final Project project = ProjectBuilder.builder().withProjectDir(workspace).build();
+        final File packageFolder = new File(workspace, "lib3");
+        FileUtils.write(new File(packageFolder, "BUILD"), "java_library(name = 'jar', srcs = glob(['src/**/*.java']))", StandardCharsets.UTF_8);
+        FileUtils.write(new File(packageFolder, "src/main/java/Lib3.java"), "class Lib3 {}", StandardCharsets.UTF_8);
+        FileUtils.write(new File(packageFolder, "build/bazel-leaf/lib3.jar"), "", StandardCharsets.UTF_8);
+        final FileCollection inputs = BazelLeafPlugin.getPackageFolderInputs(project, Collections.singleton(packageFolder));
+
+        //the aspect results are cached, so they do not know about a new file until Bazel runs again.
+        final File addedFile = new File(packageFolder, "src/main/java/added/Added.java");
+        FileUtils.write(addedFile, "class Added {}", StandardCharsets.UTF_8);
+
+        assertThat(inputs.getFiles(), Matchers.containsInAnyOrder(
+                new File(packageFolder, "BUILD"),
+                new File(packageFolder, "src/main/java/Lib3.java"),
+                addedFile));
+    }
+
+    @Test
+    public void testSubpackagesAreNotPackageFolderInputs() throws Exception {
+        final File workspace = temporaryFolder.getRoot();
+        final Project project = ProjectBuilder.builder().withProjectDir(workspace).build();
+        final File packageFolder = new File(workspace, "andlib");
+        FileUtils.write(new File(packageFolder, "BUILD.bazel"), "", StandardCharsets.UTF_8);
+        FileUtils.write(new File(packageFolder, "src/main/java/AndLib.java"), "class AndLib {}", StandardCharsets.UTF_8);
+        FileUtils.write(new File(packageFolder, "innerandlib/BUILD"), "", StandardCharsets.UTF_8);
+        FileUtils.write(new File(packageFolder, "innerandlib/src/main/java/Inner.java"), "class Inner {}", StandardCharsets.UTF_8);
+
+        final FileCollection inputs = BazelLeafPlugin.getPackageFolderInputs(project, Collections.singleton(packageFolder));
+
+        assertThat(inputs.getFiles(), Matchers.containsInAnyOrder(
+                new File(packageFolder, "BUILD.bazel"),
+                new File(packageFolder, "src/main/java/AndLib.java")));
+    }
+
+    @Test
+    public void testBuildFlagsAndBazelVersionAreInputs() {
+        final BazelInfo bazelInfo = new BazelInfo(new File("/tmp/bazel-bin"), new File("/tmp/output_base"), "release 0.11.1");
+
+        final Map<String, Object> properties = BazelLeafPlugin.getBuildInputProperties(bazelInfo, createConfig(Arrays.asList("-c", "opt")));
+
+        assertThat(properties.get("bazelVersion"), IsEqual.equalTo("release 0.11.1"));
+        assertThat(properties.get("bazelBuildFlags"), IsEqual.equalTo(Collections.singletonList("--compilation_mode=opt")));
+        //the same flags, spelled differently, are the same input.
+        assertThat(BazelLeafPlugin.getBuildInputProperties(bazelInfo, createConfig(Collections.singletonList("--compilation_mode=opt"))),
+                IsEqual.equalTo(properties));
+    }
+
+    private BazelLeafConfig.Decorated createConfig(List<String> buildFlags) {
+        return new BazelLeafConfig.Decorated("bazelBin", "//lib3", "jar", "", temporaryFolder.getRoot(), "build/bazel_output/",
+                null, 0, null, Collections.emptyList(), buildFlags);
+    }
+}
@@ -0,0 +1,61 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.bazel.utils.BazelExecHelper;
+import com.spotify.gradle.bazel.utils.BazelServerRecord;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BazelServerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRecordsTheServer() throws Exception {
+        final File recordFile = BazelServerRecord.getRecordFile(temporaryFolder.getRoot());
+        final BazelExecHelper bazelExecHelper = mockServer("1234");
+
+        final BazelServerRecord record = BazelServer.start(bazelExecHelper, "bazel", temporaryFolder.getRoot(), recordFile);
+
+        assertThat(record.pid, IsEqual.equalTo("1234"));
+        assertThat(BazelServerRecord.read(recordFile).pid, IsEqual.equalTo("1234"));
+    }
+
+    @Test
+    public void testSameServerKeepsItsUptime() throws Exception {
+        final File recordFile = BazelServerRecord.getRecordFile(temporaryFolder.getRoot());
+        final BazelServerRecord first = BazelServer.start(mockServer("1234"), "bazel", temporaryFolder.getRoot(), recordFile);
+        Thread.sleep(10);
+
+        final BazelServerRecord second = BazelServer.start(mockServer("1234"), "bazel", temporaryFolder.getRoot(), recordFile);
+        final BazelServerRecord restarted = BazelServer.start(mockServer("5678"), "bazel", temporaryFolder.getRoot(), recordFile);
+
+        assertThat(second.firstSeenMillis, IsEqual.equalTo(first.firstSeenMillis));
+        assertThat(restarted.firstSeenMillis > first.firstSeenMillis, IsEqual.equalTo(true));
+    }
+
+    private static BazelExecHelper mockServer(String pid) throws Exception {
+        final BazelExecHelper bazelExecHelper = mock(BazelExecHelper.class);
+        final BazelExecHelper.BazelExec bazelExec = mock(BazelExecHelper.BazelExec.class);
+        doReturn(bazelExec).when(bazelExecHelper).createBazelRun(anyBoolean(), anyString(), any(File.class), anyString(), anyList());
+        doReturn(new BazelExecHelper.RunResult(0, Arrays.asList(pid))).when(bazelExec).start();
+        doReturn(Collections.emptyList()).when(bazelExecHelper).getStartupOptions();
+        return bazelExecHelper;
+    }
+}
@@ -0,0 +1,126 @@
+package com.spotify.gradle.bazel;
+
+import com.spotify.gradle.hatchej.HatchejModel;
+
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class DaemonModelCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final List<String> LIB4_RECORDS = Collections.singletonList("//lib4:jar<KIND:>java_library");
+
+    @Test
+    public void testTargetRecordsAreKeptWhileInputsAreUnchanged() throws Exception {
+        final File workspace = temporaryFolder.newFolder();
+        final File buildFile = new File(workspace, "lib4/BUILD.bazel");
+        FileUtils.write(buildFile, "java_library(name = 'jar')", StandardCharsets.UTF_8);
+
+        final DaemonModelCache cache = new DaemonModelCache(workspace);
+        assertThat(cache.getTargetRecords("//lib4:jar"), IsNull.nullValue());
+
+        cache.putTargetRecords("//lib4:jar", LIB4_RECORDS, Collections.singleton(buildFile));
+        assertThat(cache.getTargetRecords("//lib4:jar"), IsEqual.equalTo(LIB4_RECORDS));
+    }
+
+    @Test
+    public void testModifiedInputDropsTargetRecords() throws Exception {
+        final File workspace = temporaryFolder.newFolder();
+        final File buildFile = new File(workspace, "lib4/BUILD.bazel");
+        FileUtils.write(buildFile, "java_library(name = 'jar')", StandardCharsets.UTF_8);
+
+        final DaemonModelCache cache = new DaemonModelCache(workspace);
+        cache.putTargetRecords("//lib4:jar", LIB4_RECORDS, Collections.singleton(buildFile));
+
+        //not waiting for the watcher: the timestamps check should catch the change on its own.
+        buildFile.setLastModified(buildFile.lastModified() - 10000);
+        assertThat(cache.getTargetRecords("//lib4:jar"), IsNull.nullValue());
+    }
+
+    @Test
+    public void testBazelInfoIsQueriedOncePerKey() throws Exception {
+        final BazelInfo info = new BazelInfo(new File("/tmp/bazel-bin"), new File("/tmp/output_base"), "release 0.11.1");
+        final AtomicInteger queries = new AtomicInteger();
+
+        final DaemonModelCache cache = new DaemonModelCache(temporaryFolder.getRoot());
+        cache.getBazelInfo("key1", () -> {
+            queries.incrementAndGet();
+            return info;
+        });
+        final BazelInfo cached = cache.getBazelInfo("key1", () -> {
+            queries.incrementAndGet();
+            return info;
+        });
+        assertThat(queries.get(), IsEqual.equalTo(1));
+        assertThat(cached, IsEqual.equalTo(info));
+
+        cache.getBazelInfo("key2", () -> {
+            queries.incrementAndGet();
+            return info;
+        });
+        assertThat(queries.get(), IsEqual.equalTo(2));
+    }
+
+    @Test
+    public void testSourceFoldersAreDerivedAgainOnlyWhenSourceFilesChange() throws Exception {
+        final File sourceFile = temporaryFolder.newFile("Lib4.java");
+        final Set<File> sourceFolders = Collections.singleton(temporaryFolder.getRoot());
+        final AtomicInteger derivations = new AtomicInteger();
+        final Supplier<Set<File>> deriveSourceFolders = () -> {
+            derivations.incrementAndGet();
+            return sourceFolders;
+        };
+
+        final DaemonModelCache cache = new DaemonModelCache(temporaryFolder.getRoot());
+        cache.getSourceFolders("//lib4:jar", Collections.singletonList(sourceFile), deriveSourceFolders);
+        assertThat(cache.getSourceFolders("//lib4:jar", Collections.singletonList(sourceFile), deriveSourceFolders),
+                IsEqual.equalTo(sourceFolders));
+        assertThat(derivations.get(), IsEqual.equalTo(1));
+
+        sourceFile.setLastModified(sourceFile.lastModified() - 10000);
+        cache.getSourceFolders("//lib4:jar", Collections.singletonList(sourceFile), deriveSourceFolders);
+        assertThat(derivations.get(), IsEqual.equalTo(2));
+
+        cache.getSourceFolders("//lib4:jar", Arrays.asList(sourceFile, temporaryFolder.newFile("Lib4Util.java")), deriveSourceFolders);
+        assertThat(derivations.get(), IsEqual.equalTo(3));
+    }
+
+    @Test
+    public void testImlIsUpToDateOnlyForSameModelAndUnchangedFile() throws Exception {
+        final File imlFile = temporaryFolder.newFile("lib4.iml");
+        final HatchejModel model = new HatchejModel();
+        model.getProjectDependencies().add(":lib2");
+
+        final DaemonModelCache cache = new DaemonModelCache(temporaryFolder.getRoot());
+        assertThat(cache.isImlUpToDate(":lib4", model, imlFile), IsEqual.equalTo(false));
+
+        cache.markImlWritten(":lib4", model, imlFile);
+        final HatchejModel sameModel = new HatchejModel();
+        sameModel.getProjectDependencies().add(":lib2");
+        assertThat(cache.isImlUpToDate(":lib4", sameModel, imlFile), IsEqual.equalTo(true));
+
+        sameModel.getProjectDependencies().add(":lib3");
+        assertThat(cache.isImlUpToDate(":lib4", sameModel, imlFile), IsEqual.equalTo(false));
+
+        imlFile.setLastModified(imlFile.lastModified() - 10000);
+        assertThat(cache.isImlUpToDate(":lib4", model, imlFile), IsEqual.equalTo(false));
+    }
+}
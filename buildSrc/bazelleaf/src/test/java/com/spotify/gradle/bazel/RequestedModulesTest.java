@@ -0,0 +1,127 @@
+package com.spotify.gradle.bazel;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.hamcrest.core.IsEqual;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class RequestedModulesTest {
+
+    private Project mRootProject;
+    private Project mApp;
+    private BazelAspectService mAspectService;
+    private RequestedModules mRequestedModules;
+    private List<String> mConfigured;
+
+    @Before
+    public void setup() {
+        mRootProject = ProjectBuilder.builder().withName("root").build();
+        mApp = ProjectBuilder.builder().withName("app").withParent(mRootProject).build();
+        ProjectBuilder.builder().withName("lib1").withParent(mRootProject).build();
+        ProjectBuilder.builder().withName("lib2").withParent(mRootProject).build();
+        ProjectBuilder.builder().withName("lib3").withParent(mRootProject).build();
+        mApp.getConfigurations().create("implementation").getDependencies()
+                .add(mApp.getDependencies().project(Collections.singletonMap("path", ":lib1")));
+
+        mAspectService = mock(BazelAspectService.class);
+        mRequestedModules = new RequestedModules(mRootProject, mAspectService);
+        mConfigured = new ArrayList<>();
+        for (String module : Arrays.asList(":lib1", ":lib2", ":lib3")) {
+            mRequestedModules.addModule(module, Collections.singletonList("/" + module.replace(':', '/') + ":jar"));
+        }
+    }
+
+    @Test
+    public void testConfiguresAllModulesWhenNoTaskWasRequested() {
+        configureAll();
+
+        assertThat(mConfigured, IsEqual.equalTo(Arrays.asList(":lib1", ":lib2", ":lib3")));
+        verify(mAspectService).registerTargets(Collections.singletonList("//lib3:jar"));
+    }
+
+    @Test
+    public void testConfiguresOnlyTheModulesOfTheRequestedTasks() {
+        mRootProject.getGradle().getStartParameter().setTaskNames(Arrays.asList(":lib2:test", "--tests", "*Lib2*"));
+
+        configureAll();
+
+        assertThat(mConfigured, IsEqual.equalTo(Collections.singletonList(":lib2")));
+        verify(mAspectService).registerTargets(Collections.singletonList("//lib2:jar"));
+        verify(mAspectService, never()).registerTargets(Collections.singletonList("//lib1:jar"));
+    }
+
+    @Test
+    public void testSkipsTheValuesOfTaskOptions() {
+        mRootProject.getGradle().getStartParameter().setTaskNames(Arrays.asList(":lib2:test", "--tests", "lib3", "-x", "build"));
+
+        configureAll();
+
+        assertThat(mConfigured, IsEqual.equalTo(Collections.singletonList(":lib2")));
+    }
+
+    @Test
+    public void testConfiguresTheProjectDependenciesOfTheRequestedProjects() {
+        mRootProject.getGradle().getStartParameter().setTaskNames(Collections.singletonList(":app:assembleDebug"));
+
+        configureAll();
+
+        assertThat(mConfigured, IsEqual.equalTo(Collections.singletonList(":lib1")));
+    }
+
+    @Test
+    public void testConfiguresDeferredModuleWhenRequired() {
+        mRootProject.getGradle().getStartParameter().setTaskNames(Collections.singletonList(":lib2:assemble"));
+
+        configureAll();
+        mRequestedModules.require(":lib3");
+        mRequestedModules.require(":lib3");
+
+        assertThat(mConfigured, IsEqual.equalTo(Arrays.asList(":lib2", ":lib3")));
+        verify(mAspectService).registerTargets(Collections.singletonList("//lib3:jar"));
+    }
+
+    @Test
+    public void testRegistersTheReportedDependenciesOfARequiredModule() {
+        mRootProject.getGradle().getStartParameter().setTaskNames(Collections.singletonList(":lib1:assemble"));
+        doReturn(Collections.singleton("//lib3:jar")).when(mAspectService).getReportedModuleDeps("//lib2:jar");
+
+        configureAll();
+        mRequestedModules.require(":lib2");
+
+        //lib3 is configured only once lib2's configuration requires it, but its targets are already registered.
+        assertThat(mConfigured, IsEqual.equalTo(Arrays.asList(":lib1", ":lib2")));
+        verify(mAspectService).registerTargets(Collections.singletonList("//lib3:jar"));
+        mRequestedModules.require(":lib3");
+        assertThat(mConfigured, IsEqual.equalTo(Arrays.asList(":lib1", ":lib2", ":lib3")));
+        //and not registered again.
+        verify(mAspectService).registerTargets(Collections.singletonList("//lib3:jar"));
+    }
+
+    @Test
+    public void testConfiguresAllModulesForUnresolvedTaskPaths() {
+        mRootProject.getGradle().getStartParameter().setTaskNames(Collections.singletonList(":l2:assemble"));
+
+        configureAll();
+
+        assertThat(mConfigured, IsEqual.equalTo(Arrays.asList(":lib1", ":lib2", ":lib3")));
+    }
+
+    private void configureAll() {
+        for (String module : Arrays.asList(":lib1", ":lib2", ":lib3")) {
+            mRequestedModules.configureIfNeeded(module, () -> mConfigured.add(module));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.spotify.gradle.bazel.bep;
+
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BuildEventFileReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadsEventsWrittenInPieces() throws Exception {
+        final File eventsFile = new File(temporaryFolder.getRoot(), "events.json");
+        final List<String> completedLabels = Collections.synchronizedList(new ArrayList<>());
+        final BuildEventFileReader reader = new BuildEventFileReader(eventsFile, new BuildEventListener() {
+            @Override
+            public void onTargetCompleted(TargetCompletedEvent event) {
+                completedLabels.add(event.label);
+            }
+        });
+        reader.start();
+
+        final String event1 = "{\"id\":{\"targetCompleted\":{\"label\":\"//lib2:jar\"}},\"completed\":{\"success\":true}}\n";
+        final String event2 = "{\"id\":{\"targetCompleted\":{\"label\":\"//lib3:jar\"}},\"completed\":{\"success\":true}}\n";
+        try (FileOutputStream outputStream = new FileOutputStream(eventsFile)) {
+            outputStream.write(event1.getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            //half a line, which should be held back until its newline arrives.
+            outputStream.write(event2.substring(0, 20).getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            Thread.sleep(200);
+            outputStream.write(event2.substring(20).getBytes(StandardCharsets.UTF_8));
+        }
+        reader.close();
+
+        assertThat(completedLabels, Matchers.contains("//lib2:jar", "//lib3:jar"));
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        final BuildEventFileReader reader = new BuildEventFileReader(new File(temporaryFolder.getRoot(), "events.json"), new BuildEventListener() {
+        });
+        reader.start();
+        reader.close();
+    }
+}
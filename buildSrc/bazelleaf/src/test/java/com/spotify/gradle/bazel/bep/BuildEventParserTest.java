@@ -0,0 +1,152 @@
+package com.spotify.gradle.bazel.bep;
+
+import org.hamcrest.Matchers;
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsEqual;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BuildEventParserTest {
+
+    private static class RecordingListener implements BuildEventListener {
+        final List<BuildEvent> events = new ArrayList<>();
+
+        @Override
+        public void onTargetCompleted(TargetCompletedEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onTestResult(TestResultEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onTestSummary(TestSummaryEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onActionCompleted(ActionCompletedEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onBuildFinished(BuildFinishedEvent event) {
+            events.add(event);
+        }
+    }
+
+    @Test
+    public void testTargetCompletedWithImportantOutputs() {
+        final RecordingListener listener = new RecordingListener();
+        new BuildEventParser(listener).parse("{\"id\":{\"targetCompleted\":{\"label\":\"//lib2:jar\",\"configuration\":{\"id\":\"abc\"}}},"
+                + "\"completed\":{\"success\":true,\"importantOutput\":[{\"name\":\"lib2/libjar.jar\",\"uri\":\"file:///tmp/bin/lib2/libjar.jar\"}]}}");
+
+        final TargetCompletedEvent event = (TargetCompletedEvent) listener.events.get(0);
+        assertThat(event.label, IsEqual.equalTo("//lib2:jar"));
+        assertThat(event.success, Is.is(true));
+        assertThat(event.outputs, Matchers.contains(new File("/tmp/bin/lib2/libjar.jar")));
+    }
+
+    @Test
+    public void testTargetCompletedWithNamedSets() {
+        final RecordingListener listener = new RecordingListener();
+        final BuildEventParser parser = new BuildEventParser(listener);
+        parser.parse("{\"id\":{\"namedSet\":{\"id\":\"1\"}},\"namedSetOfFiles\":{\"files\":[{\"name\":\"a.jar\",\"uri\":\"file:///tmp/a.jar\"}]}}");
+        parser.parse("{\"id\":{\"namedSet\":{\"id\":\"0\"}},\"namedSetOfFiles\":{\"files\":[{\"name\":\"b.jar\",\"uri\":\"file:///tmp/b.jar\"},"
+                + "{\"name\":\"remote.jar\",\"uri\":\"bytestream://cache/remote.jar\"}],\"fileSets\":[{\"id\":\"1\"}]}}");
+        parser.parse("{\"id\":{\"targetCompleted\":{\"label\":\"//lib2:jar\"}},"
+                + "\"completed\":{\"success\":true,\"outputGroup\":[{\"name\":\"default\",\"fileSets\":[{\"id\":\"0\"}]}]}}");
+
+        final TargetCompletedEvent event = (TargetCompletedEvent) listener.events.get(0);
+        assertThat(event.outputs, Matchers.contains(new File("/tmp/b.jar"), new File("/tmp/a.jar")));
+    }
+
+    @Test
+    public void testAbortedTarget() {
+        final RecordingListener listener = new RecordingListener();
+        new BuildEventParser(listener).parse("{\"id\":{\"targetCompleted\":{\"label\":\"//lib2:jar\"}},\"aborted\":{\"reason\":\"SKIPPED\"}}");
+
+        final TargetCompletedEvent event = (TargetCompletedEvent) listener.events.get(0);
+        assertThat(event.success, Is.is(false));
+        assertThat(event.outputs, Matchers.empty());
+        assertThat(event.abortReason, IsEqual.equalTo("SKIPPED"));
+    }
+
+    @Test
+    public void testTargetAbortedWhileConfiguring() {
+        final RecordingListener listener = new RecordingListener();
+        new BuildEventParser(listener).parse("{\"id\":{\"targetConfigured\":{\"label\":\"//lib2:jar\"}},"
+                + "\"aborted\":{\"reason\":\"ANALYSIS_FAILURE\",\"description\":\"no such target\"}}");
+
+        final TargetCompletedEvent event = (TargetCompletedEvent) listener.events.get(0);
+        assertThat(event.label, IsEqual.equalTo("//lib2:jar"));
+        assertThat(event.abortReason, IsEqual.equalTo("ANALYSIS_FAILURE: no such target"));
+    }
+
+    @Test
+    public void testTestEvents() {
+        final RecordingListener listener = new RecordingListener();
+        final BuildEventParser parser = new BuildEventParser(listener);
+        parser.parse("{\"id\":{\"testResult\":{\"label\":\"//lib2:AllTests\",\"run\":1,\"shard\":1,\"attempt\":1}},"
+                + "\"testResult\":{\"status\":\"PASSED\",\"testAttemptDurationMillis\":\"1234\",\"cachedLocally\":true,"
+                + "\"testActionOutput\":[{\"name\":\"test.log\",\"uri\":\"file:///tmp/testlogs/lib2/AllTests/test.log\"}]}}");
+        parser.parse("{\"id\":{\"testSummary\":{\"label\":\"//lib2:AllTests\"}},"
+                + "\"testSummary\":{\"overallStatus\":\"PASSED\",\"totalRunCount\":1,\"totalNumCached\":1,"
+                + "\"passed\":[{\"uri\":\"file:///tmp/testlogs/lib2/AllTests/test.log\"}]}}");
+
+        final TestResultEvent result = (TestResultEvent) listener.events.get(0);
+        assertThat(result.status, IsEqual.equalTo("PASSED"));
+        assertThat(result.durationMillis, IsEqual.equalTo(1234L));
+        assertThat(result.cached, Is.is(true));
+        assertThat(result.outputs.get("test.log"), IsEqual.equalTo(new File("/tmp/testlogs/lib2/AllTests/test.log")));
+
+        final TestSummaryEvent summary = (TestSummaryEvent) listener.events.get(1);
+        assertThat(summary.isPassed(), Is.is(true));
+        assertThat(summary.totalRunCount, IsEqual.equalTo(1));
+        assertThat(summary.cachedRunCount, IsEqual.equalTo(1));
+        assertThat(summary.passedLogs, Matchers.contains(new File("/tmp/testlogs/lib2/AllTests/test.log")));
+        assertThat(summary.failedLogs, Matchers.empty());
+    }
+
+    @Test
+    public void testActionCompletedTimings() {
+        final RecordingListener listener = new RecordingListener();
+        new BuildEventParser(listener).parse("{\"id\":{\"actionCompleted\":{\"primaryOutput\":\"bin/lib2/libjar.jar\",\"label\":\"//lib2:jar\"}},"
+                + "\"action\":{\"success\":true,\"type\":\"Javac\",\"startTime\":\"2018-06-01T10:00:00Z\",\"endTime\":\"2018-06-01T10:00:01.500Z\"}}");
+
+        final ActionCompletedEvent event = (ActionCompletedEvent) listener.events.get(0);
+        assertThat(event.type, IsEqual.equalTo("Javac"));
+        assertThat(event.success, Is.is(true));
+        assertThat(event.getDurationMillis(), IsEqual.equalTo(1500L));
+    }
+
+    @Test
+    public void testBuildFinishedAndLastMessage() {
+        final RecordingListener listener = new RecordingListener();
+        final BuildEventParser parser = new BuildEventParser(listener);
+        assertThat(parser.isLastMessageSeen(), Is.is(false));
+
+        parser.parse("{\"id\":{\"buildFinished\":{}},\"finished\":{\"exitCode\":{\"name\":\"TESTS_FAILED\",\"code\":3}},\"lastMessage\":true}");
+
+        final BuildFinishedEvent event = (BuildFinishedEvent) listener.events.get(0);
+        assertThat(event.success, Is.is(false));
+        assertThat(event.exitCodeName, IsEqual.equalTo("TESTS_FAILED"));
+        assertThat(parser.isLastMessageSeen(), Is.is(true));
+    }
+
+    @Test
+    public void testIgnoresUnknownEvents() {
+        final RecordingListener listener = new RecordingListener();
+        new BuildEventParser(listener).parse("{\"id\":{\"progress\":{\"opaqueCount\":1}},\"progress\":{\"stderr\":\"Loading...\"}}");
+
+        assertThat(listener.events, Matchers.empty());
+    }
+}
@@ -5,6 +5,7 @@ import com.spotify.gradle.bazel.TestUtils;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
 
 import org.gradle.api.Project;
+import org.gradle.api.tasks.CacheableTask;
 import org.hamcrest.core.IsEqual;
 import org.junit.Test;
 
@@ -58,6 +59,8 @@ public class BazelBuildTaskTest {
         verify(bazelBuild.getMockBazelExecHelper()).createBazelRun(true, config, "targetName", "build");
         verify(bazelBuild.mockBazelExec).start();
 
+        assertThat(bazelBuild.getInputs().getProperties().get("bazelTarget"), IsEqual.equalTo("targetPath:targetName"));
+        assertThat(BazelBuildTask.class.isAnnotationPresent(CacheableTask.class), IsEqual.equalTo(true));
         assertThat(bazelBuild.getDescription(), IsEqual
                 .equalTo("Compiles Bazel target targetPath:targetName"));
     }
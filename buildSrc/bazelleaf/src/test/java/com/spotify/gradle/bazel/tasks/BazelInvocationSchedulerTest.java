@@ -0,0 +1,280 @@
+package com.spotify.gradle.bazel.tasks;
+
+import com.spotify.gradle.bazel.BazelLeafConfig;
+import com.spotify.gradle.bazel.bep.BuildEventListener;
+import com.spotify.gradle.bazel.bep.BuildEventParser;
+import com.spotify.gradle.bazel.bep.CompositeBuildEventListener;
+import com.spotify.gradle.bazel.bep.TargetCompletedEvent;
+import com.spotify.gradle.bazel.bep.TestSummaryEvent;
+import com.spotify.gradle.bazel.utils.BazelExecHelper;
+
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsEqual;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UseAssertThatThrowingInstead"})
+public class BazelInvocationSchedulerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final BazelLeafConfig.Decorated mConfig = new BazelLeafConfig.Decorated(
+            "bazelBin",
+            "targetPath",
+            "targetName",
+            "testTargetName",
+            new File("workspaceDir"),
+            "outputDir");
+    private final List<BuildEventListener> mListeners = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> mReportedEvents = new ArrayList<>();
+    private BazelExecHelper mBazelExecHelper;
+    private BazelExecHelper.BazelExec mBazelExec;
+    private BazelInvocationScheduler mUnderTest;
+
+    @Before
+    public void setUp() throws Exception {
+        mBazelExecHelper = mock(BazelExecHelper.class);
+        mBazelExec = mock(BazelExecHelper.BazelExec.class);
+        doReturn(mBazelExec).when(mBazelExecHelper).createBazelRun(anyBoolean(), any(), anyList(), anyString(), any());
+        doAnswer(invocation -> mListeners.add(invocation.getArgument(0))).when(mBazelExec).addBuildEventListener(any());
+        doAnswer(invocation -> {
+            final BuildEventParser parser = new BuildEventParser(new CompositeBuildEventListener(mListeners));
+            mReportedEvents.forEach(parser::parse);
+            mListeners.clear();
+            return null;
+        }).when(mBazelExec).start();
+
+        mUnderTest = new BazelInvocationScheduler(mBazelExecHelper, temporaryFolder.getRoot(), 200);
+    }
+
+    @Test
+    public void testCoalescesSubmissionsIntoOneInvocation() throws Exception {
+        mReportedEvents.add(targetCompleted("//lib1:jar", true));
+        mReportedEvents.add(targetCompleted("//lib2:jar", true));
+
+        final CompletableFuture<Void> lib1 = mUnderTest.submit(mConfig, "build", "//lib1:jar", null);
+        final CompletableFuture<Void> lib2 = mUnderTest.submit(mConfig, "build", "//lib2:jar", null);
+        lib1.get(5, TimeUnit.SECONDS);
+        lib2.get(5, TimeUnit.SECONDS);
+
+        verify(mBazelExecHelper, times(1)).createBazelRun(true, mConfig, Arrays.asList("//lib1:jar", "//lib2:jar"), "build");
+        verify(mBazelExec).setLogFile(new File(temporaryFolder.getRoot(), "coalesced-build-1.log"));
+    }
+
+    @Test
+    public void testSubmissionListenerReceivesEvents() throws Exception {
+        mReportedEvents.add(targetCompleted("//lib1:jar", true));
+        final List<String> seenLabels = new ArrayList<>();
+
+        mUnderTest.submit(mConfig, "build", "//lib1:jar", new BuildEventListener() {
+            @Override
+            public void onTargetCompleted(TargetCompletedEvent event) {
+                seenLabels.add(event.label);
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertThat(seenLabels, IsEqual.equalTo(Arrays.asList("//lib1:jar")));
+    }
+
+    @Test
+    public void testFailedTargetFailsOnlyItsSubmission() throws Exception {
+        mReportedEvents.add(targetCompleted("//lib1:jar", false));
+        mReportedEvents.add(targetCompleted("//lib2:jar", true));
+
+        final CompletableFuture<Void> lib1 = mUnderTest.submit(mConfig, "build", "//lib1:jar", null);
+        final CompletableFuture<Void> lib2 = mUnderTest.submit(mConfig, "build", "//lib2:jar", null);
+        lib2.get(5, TimeUnit.SECONDS);
+        try {
+            lib1.get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause() instanceof IOException, Is.is(true));
+        }
+    }
+
+    @Test
+    public void testAbortedTargetFailsOnlyItsSubmission() throws Exception {
+        mReportedEvents.add(targetCompleted("//lib1:jar", false));
+        mReportedEvents.add("{\"id\":{\"targetCompleted\":{\"label\":\"//lib2:jar\"}},\"aborted\":{\"reason\":\"SKIPPED\"}}");
+        mReportedEvents.add(targetCompleted("//lib3:jar", true));
+
+        final CompletableFuture<Void> lib1 = mUnderTest.submit(mConfig, "build", "//lib1:jar", null);
+        final CompletableFuture<Void> lib2 = mUnderTest.submit(mConfig, "build", "//lib2:jar", null);
+        mUnderTest.submit(mConfig, "build", "//lib3:jar", null).get(5, TimeUnit.SECONDS);
+        try {
+            lib2.get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage().startsWith("Bazel did not build //lib2:jar (SKIPPED)"), Is.is(true));
+        }
+        try {
+            lib1.get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage().startsWith("Bazel failed to build //lib1:jar"), Is.is(true));
+        }
+    }
+
+    @Test
+    public void testFailedInvocationFailsUnreportedSubmissions() throws Exception {
+        final IOException failure = new IOException("bazel exploded");
+        doAnswer(invocation -> {
+            throw failure;
+        }).when(mBazelExec).start();
+
+        try {
+            mUnderTest.submit(mConfig, "build", "//lib1:jar", null).get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), IsEqual.equalTo(failure));
+        }
+    }
+
+    @Test
+    public void testDifferentCommandsRunSeparately() throws Exception {
+        mUnderTest.submit(mConfig, "build", "//lib1:jar", null);
+        mUnderTest.submit(mConfig, "test", "//lib1:tests", null).get(5, TimeUnit.SECONDS);
+
+        verify(mBazelExecHelper).createBazelRun(true, mConfig, Arrays.asList("//lib1:jar"), "build");
+        verify(mBazelExecHelper).createBazelRun(true, mConfig, Arrays.asList("//lib1:tests"), "test");
+    }
+
+    @Test
+    public void testSubmissionListenerReceivesOnlyItsTargetEvents() throws Exception {
+        mReportedEvents.add(targetCompleted("//lib1:jar", true));
+        mReportedEvents.add(targetCompleted("//lib2:jar", true));
+        final List<String> seenLabels = Collections.synchronizedList(new ArrayList<>());
+        final BuildEventListener listener = new BuildEventListener() {
+            @Override
+            public void onTargetCompleted(TargetCompletedEvent event) {
+                seenLabels.add(event.label);
+            }
+        };
+
+        final CompletableFuture<Void> lib1 = mUnderTest.submit(mConfig, "build", "//lib1:jar", listener);
+        mUnderTest.submit(mConfig, "build", "//lib2:jar", null).get(5, TimeUnit.SECONDS);
+        lib1.get(5, TimeUnit.SECONDS);
+
+        assertThat(seenLabels, IsEqual.equalTo(Arrays.asList("//lib1:jar")));
+    }
+
+    @Test
+    public void testPlannedBatchRunsAllPlannedTargetsOnFirstSubmission() throws Exception {
+        mReportedEvents.add(testSummary("//lib1:tests", "PASSED"));
+        mReportedEvents.add(testSummary("//lib2:tests", "PASSED"));
+        final List<String> batchArgs = Arrays.asList("--keep_going", "--local_test_jobs=2");
+        mUnderTest.planBatch("test", "//lib1:tests", batchArgs);
+        mUnderTest.planBatch("test", "//lib2:tests", batchArgs);
+        assertThat(mUnderTest.isPlanned("test", "//lib2:tests"), Is.is(true));
+        assertThat(mUnderTest.isPlanned("build", "//lib2:tests"), Is.is(false));
+
+        mUnderTest.submit(mConfig, "test", "//lib1:tests", null).get(5, TimeUnit.SECONDS);
+        verify(mBazelExecHelper).createBazelRun(true, mConfig, Arrays.asList("//lib1:tests", "//lib2:tests"), "test", "--keep_going", "--local_test_jobs=2");
+
+        //the second module's task gets the result, and events, of the batch that already ran.
+        final List<String> summaries = new ArrayList<>();
+        mUnderTest.submit(mConfig, "test", "//lib2:tests", new BuildEventListener() {
+            @Override
+            public void onTestSummary(TestSummaryEvent event) {
+                summaries.add(event.label + " " + event.overallStatus);
+            }
+        }).get(5, TimeUnit.SECONDS);
+
+        assertThat(summaries, IsEqual.equalTo(Arrays.asList("//lib2:tests PASSED")));
+        verify(mBazelExecHelper, times(1)).createBazelRun(anyBoolean(), any(), anyList(), anyString(), any());
+    }
+
+    @Test
+    public void testFailedTestFailsOnlyItsSubmission() throws Exception {
+        mReportedEvents.add(testSummary("//lib1:tests", "FAILED"));
+        mReportedEvents.add(testSummary("//lib2:tests", "PASSED"));
+        mUnderTest.planBatch("test", "//lib1:tests", Collections.emptyList());
+        mUnderTest.planBatch("test", "//lib2:tests", Collections.emptyList());
+
+        final CompletableFuture<Void> lib1 = mUnderTest.submit(mConfig, "test", "//lib1:tests", null);
+        mUnderTest.submit(mConfig, "test", "//lib2:tests", null).get(5, TimeUnit.SECONDS);
+        try {
+            lib1.get(5, TimeUnit.SECONDS);
+            fail("Should have failed");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage().startsWith("Bazel test //lib1:tests FAILED"), Is.is(true));
+        }
+    }
+
+    @Test
+    public void testPlannedChainsRunSeparately() throws Exception {
+        mUnderTest.planChained("build", "//andlib:lib.aar", Arrays.asList("//andlib:lib", "//andlib/innerandlib:inneraar"));
+        mUnderTest.planChained("build", "//andlib/innerandlib:inneraar.aar", Arrays.asList("//andlib/innerandlib:inneraar"));
+        mUnderTest.planChained("build", "//lib3:jar", Arrays.asList("//lib3:jar", "//lib4:jar"));
+        mUnderTest.planChained("build", "//lib4:jar", Arrays.asList("//lib4:jar"));
+        mUnderTest.planChained("build", "//lib2:jar", Arrays.asList("//lib2:jar"));
+        //nothing is chained to lib2, so its task runs on its own.
+        assertThat(mUnderTest.hasCoalescingPartners("build", "//lib2:jar"), Is.is(false));
+        assertThat(mUnderTest.hasCoalescingPartners("build", "//lib4:jar"), Is.is(true));
+
+        //the dependency's task runs first, and builds its whole chain.
+        mUnderTest.submit(mConfig, "build", "//andlib/innerandlib:inneraar.aar", null).get(5, TimeUnit.SECONDS);
+        mUnderTest.submit(mConfig, "build", "//andlib:lib.aar", null).get(5, TimeUnit.SECONDS);
+        verify(mBazelExecHelper).createBazelRun(true, mConfig, Arrays.asList("//andlib/innerandlib:inneraar.aar", "//andlib:lib.aar"), "build");
+        assertThat(mUnderTest.hasCoalescingPartners("build", "//andlib:lib.aar"), Is.is(true));
+        assertThat(mUnderTest.isPlanned("build", "//lib3:jar"), Is.is(true));
+
+        mUnderTest.submit(mConfig, "build", "//lib3:jar", null).get(5, TimeUnit.SECONDS);
+        verify(mBazelExecHelper).createBazelRun(true, mConfig, Arrays.asList("//lib3:jar", "//lib4:jar"), "build");
+        verify(mBazelExecHelper, times(2)).createBazelRun(anyBoolean(), any(), anyList(), anyString(), any());
+    }
+
+    @Test
+    public void testPlannedUnrelatedTargetsShareOneInvocation() throws Exception {
+        mReportedEvents.add(targetCompleted("//lib1:jar", true));
+        mReportedEvents.add(targetCompleted("//lib2:jar", true));
+        mReportedEvents.add(targetCompleted("//lib3:jar", true));
+        mUnderTest.planChained("build", "//lib1:jar", Arrays.asList("//lib1:jar"));
+        mUnderTest.planChained("build", "//lib2:jar", Arrays.asList("//lib2:jar"));
+
+        //tasks of a parallel build, starting together.
+        final CompletableFuture<Void> lib1 = mUnderTest.submit(mConfig, "build", "//lib1:jar", null);
+        final CompletableFuture<Void> lib2 = mUnderTest.submit(mConfig, "build", "//lib2:jar", null);
+        final CompletableFuture<Void> lib3 = mUnderTest.submit(mConfig, "build", "//lib3:jar", null);
+        lib1.get(5, TimeUnit.SECONDS);
+        lib2.get(5, TimeUnit.SECONDS);
+        lib3.get(5, TimeUnit.SECONDS);
+
+        verify(mBazelExecHelper).createBazelRun(true, mConfig, Arrays.asList("//lib1:jar", "//lib2:jar", "//lib3:jar"), "build");
+        verify(mBazelExecHelper, times(1)).createBazelRun(anyBoolean(), any(), anyList(), anyString(), any());
+    }
+
+    private static String testSummary(String label, String status) {
+        return "{\"id\":{\"testSummary\":{\"label\":\"" + label + "\"}},\"testSummary\":{\"overallStatus\":\"" + status
+                + "\",\"totalRunCount\":1}}";
+    }
+
+    private static String targetCompleted(String label, boolean success) {
+        return "{\"id\":{\"targetCompleted\":{\"label\":\"" + label + "\"}},\"completed\":{\"success\":" + success + "}}";
+    }
+}
@@ -5,6 +5,7 @@ import com.spotify.gradle.bazel.TestUtils;
 import com.spotify.gradle.bazel.utils.BazelExecHelper;
 
 import org.gradle.api.Project;
+import org.gradle.api.tasks.CacheableTask;
 import org.hamcrest.core.IsEqual;
 import org.junit.Test;
 
@@ -56,6 +57,8 @@ public class BazelTestTaskTest {
         verify(bazelTest.getMockBazelExecHelper()).createBazelRun(true, config, "testTargetName", "test");
         verify(bazelTest.mockBazelExec).start();
 
+        assertThat(bazelTest.getInputs().getProperties().get("bazelTarget"), IsEqual.equalTo("targetPath:testTargetName"));
+        assertThat(BazelTestTask.class.isAnnotationPresent(CacheableTask.class), IsEqual.equalTo(true));
         assertThat(bazelTest.getDescription(), IsEqual
                 .equalTo("Tests Bazel target targetPath:testTargetName"));
     }
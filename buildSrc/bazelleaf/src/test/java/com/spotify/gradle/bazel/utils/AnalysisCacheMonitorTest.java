@@ -0,0 +1,26 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Test;
+
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class AnalysisCacheMonitorTest {
+
+    @Test
+    public void testCountsDiscards() {
+        final AnalysisCacheMonitor monitor = new AnalysisCacheMonitor();
+        final Consumer<String> build = monitor.watch("build //lib2:jar");
+        build.accept("INFO: Analysed target //lib2:jar (0 packages loaded).");
+        assertThat(monitor.getDiscardCount(), IsEqual.equalTo(0));
+
+        final Consumer<String> test = monitor.watch("test //lib2:AllTests");
+        test.accept("INFO: Build options have changed, discarding analysis cache.");
+        test.accept("INFO: Analysed target //lib2:AllTests (0 packages loaded).");
+
+        assertThat(monitor.getDiscardCount(), IsEqual.equalTo(1));
+    }
+}
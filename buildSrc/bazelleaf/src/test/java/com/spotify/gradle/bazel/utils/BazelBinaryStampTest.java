@@ -0,0 +1,70 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.core.Is;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BazelBinaryStampTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testMissingStamp() throws Exception {
+        final File binary = temporaryFolder.newFile("bazel");
+        final BazelBinaryStamp stamp = new BazelBinaryStamp(binary);
+
+        assertThat(stamp.exists(), Is.is(false));
+        assertThat(stamp.isUpToDate(), Is.is(false));
+    }
+
+    @Test
+    public void testUnchangedBinaryIsUpToDate() throws Exception {
+        final File binary = temporaryFolder.newFile("bazel");
+        FileUtils.write(binary, "bazel binary", StandardCharsets.UTF_8);
+        new BazelBinaryStamp(binary).write();
+
+        final BazelBinaryStamp stamp = new BazelBinaryStamp(binary);
+        assertThat(stamp.exists(), Is.is(true));
+        assertThat(stamp.isUpToDate(), Is.is(true));
+        assertThat(new File(temporaryFolder.getRoot(), "bazel.stamp").isFile(), Is.is(true));
+    }
+
+    @Test
+    public void testTouchedBinaryIsUpToDate() throws Exception {
+        final File binary = temporaryFolder.newFile("bazel");
+        FileUtils.write(binary, "bazel binary", StandardCharsets.UTF_8);
+        new BazelBinaryStamp(binary).write();
+
+        binary.setLastModified(binary.lastModified() - 10000);
+
+        assertThat(new BazelBinaryStamp(binary).isUpToDate(), Is.is(true));
+    }
+
+    @Test
+    public void testReplacedBinaryIsNotUpToDate() throws Exception {
+        final File binary = temporaryFolder.newFile("bazel");
+        FileUtils.write(binary, "bazel binary", StandardCharsets.UTF_8);
+        new BazelBinaryStamp(binary).write();
+
+        FileUtils.write(binary, "another bazel binary", StandardCharsets.UTF_8);
+
+        assertThat(new BazelBinaryStamp(binary).isUpToDate(), Is.is(false));
+    }
+
+    @Test
+    public void testNoStampForMissingBinary() throws Exception {
+        final BazelBinaryStamp stamp = new BazelBinaryStamp(new File(temporaryFolder.getRoot(), "bazel"));
+        stamp.write();
+
+        assertThat(stamp.exists(), Is.is(false));
+    }
+}
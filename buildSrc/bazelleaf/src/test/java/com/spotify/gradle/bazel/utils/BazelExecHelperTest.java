@@ -4,6 +4,7 @@ import com.spotify.gradle.bazel.BazelLeafConfig;
 
 import org.hamcrest.collection.IsMapContaining;
 import org.hamcrest.core.Is;
+import org.hamcrest.core.IsEqual;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
@@ -15,6 +16,7 @@ import java.util.Collections;
 import java.util.Properties;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -23,7 +25,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
-@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UsingExpectedTestAnnotationParameter"})
+@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UsingExpectedTestAnnotationParameter", "PMD.UseAssertThatThrowingInstead"})
 public class BazelExecHelperTest {
 
     @Rule
@@ -101,4 +103,105 @@ public class BazelExecHelperTest {
         BazelExecHelper.BazelExec bazelExec = new BazelExecHelper.BazelExec(false, processBuilder);
         bazelExec.start();
     }
+
+    @Test
+    public void testInterruptedExecDestroysTheProcess() throws Exception {
+        final File marker = new File(temporaryFolder.getRoot(), "finished");
+        final BazelExecHelper.BazelExec bazelExec = new BazelExecHelper.BazelExec(false,
+                new ProcessBuilder("sh", "-c", "sleep 1 && touch " + marker.getAbsolutePath()));
+        //the wait for the process is interrupted right away.
+        Thread.currentThread().interrupt();
+        try {
+            bazelExec.start();
+            fail("Should have been interrupted");
+        } catch (InterruptedException e) {
+            assertThat(Thread.currentThread().isInterrupted(), Is.is(true));
+        } finally {
+            Thread.interrupted();
+        }
+
+        //a process that was left running would have finished by now.
+        Thread.sleep(2000);
+        assertThat(marker.exists(), Is.is(false));
+    }
+
+    @Test
+    public void testDiskCacheIsUsedByBuildCommands() {
+        BazelLeafConfig.Decorated config = new BazelLeafConfig.Decorated(
+                "bazelBin",
+                "//targetPath",
+                "targetName",
+                "testTargetName",
+                new File("workspaceDir"),
+                "outputDir",
+                new File("/tmp/disk-cache"),
+                0,
+                null,
+                Collections.emptyList(),
+                Collections.emptyList()
+        );
+        final BazelExecHelper bazelExecHelper = new BazelExecHelper();
+
+        assertThat(bazelExecHelper.createBazelRun(false, config, "targetName", "build").toString()
+                .contains("--disk_cache=/tmp/disk-cache"), Is.is(true));
+        assertThat(bazelExecHelper.createBazelRun(false, config, "", "info").toString()
+                .contains("--disk_cache"), Is.is(false));
+    }
+
+    @Test
+    public void testRepositoryCacheAndStartupOptions() {
+        BazelLeafConfig.Decorated config = new BazelLeafConfig.Decorated(
+                "bazelBin",
+                "//targetPath",
+                "targetName",
+                "testTargetName",
+                new File("workspaceDir"),
+                "outputDir",
+                null,
+                0,
+                new File("/tmp/repository-cache"),
+                Collections.singletonList("--output_user_root=/tmp/output-user-root"),
+                Collections.emptyList()
+        );
+        final BazelExecHelper bazelExecHelper = new BazelExecHelper();
+
+        assertThat(bazelExecHelper.createBazelRun(false, config, "targetName", "build").toString(),
+                IsEqual.equalTo("BazelExec: [bazelBin, --output_user_root=/tmp/output-user-root, build, --curses=no, --color=no, "
+                        + "--experimental_ui=no, --progress_in_terminal_title=no, --symlink_prefix=outputDir, "
+                        + "--repository_cache=/tmp/repository-cache, //targetPath:targetName]"));
+        assertThat(bazelExecHelper.createBazelRun(false, config, "", "info").toString(),
+                IsEqual.equalTo("BazelExec: [bazelBin, --output_user_root=/tmp/output-user-root, info, --curses=no, --color=no, "
+                        + "--experimental_ui=no, --progress_in_terminal_title=no, --symlink_prefix=outputDir]"));
+
+        //startup options the helper was given, are not mixed with the module's.
+        bazelExecHelper.setStartupOptions(Collections.singletonList("--output_user_root=/tmp/output-user-root"));
+        assertThat(bazelExecHelper.createBazelRun(false, config, "", "info").toString(),
+                IsEqual.equalTo("BazelExec: [bazelBin, --output_user_root=/tmp/output-user-root, info, --curses=no, --color=no, "
+                        + "--experimental_ui=no, --progress_in_terminal_title=no, --symlink_prefix=outputDir]"));
+    }
+
+    @Test
+    public void testBuildFlagsArePassedToConfiguredCommands() {
+        BazelLeafConfig.Decorated config = new BazelLeafConfig.Decorated(
+                "bazelBin",
+                "//targetPath",
+                "targetName",
+                "testTargetName",
+                new File("workspaceDir"),
+                "outputDir",
+                null,
+                0,
+                null,
+                Collections.emptyList(),
+                Arrays.asList("--define=flavor=free", "-c", "opt")
+        );
+        final BazelExecHelper bazelExecHelper = new BazelExecHelper();
+
+        assertThat(bazelExecHelper.createBazelRun(false, config, "testTargetName", "test", "--keep_going").toString(),
+                IsEqual.equalTo("BazelExec: [bazelBin, test, --curses=no, --color=no, --experimental_ui=no, --progress_in_terminal_title=no, "
+                        + "--symlink_prefix=outputDir, //targetPath:testTargetName, --define=flavor=free, --compilation_mode=opt, --keep_going]"));
+        assertThat(bazelExecHelper.createBazelRun(false, config, "", "clean", "--expunge").toString(),
+                IsEqual.equalTo("BazelExec: [bazelBin, clean, --curses=no, --color=no, --experimental_ui=no, --progress_in_terminal_title=no, "
+                        + "--symlink_prefix=outputDir, --expunge]"));
+    }
 }
@@ -0,0 +1,55 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.hamcrest.core.IsEqual;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UseAssertThatThrowingInstead"})
+public class BazelOptionNormalizerTest {
+
+    @Test
+    public void testBuildFlagsComeFirst() {
+        assertThat(BazelOptionNormalizer.normalize("build", Arrays.asList("-copt", "--define=flavor=free"),
+                Arrays.asList("--output_groups=bazel_leaf_info", "--aspects", "aspect.bzl%info")),
+                IsEqual.equalTo(Arrays.asList("--compilation_mode=opt", "--define=flavor=free",
+                        "--output_groups=bazel_leaf_info", "--aspects", "aspect.bzl%info")));
+    }
+
+    @Test
+    public void testCommandMayRepeatBuildFlags() {
+        assertThat(BazelOptionNormalizer.normalize("test", Collections.singletonList("--compilation_mode=opt"),
+                Arrays.asList("-c", "opt", "--keep_going")),
+                IsEqual.equalTo(Arrays.asList("--compilation_mode=opt", "--keep_going")));
+    }
+
+    @Test
+    public void testCommandCanNotChangeTheConfiguration() {
+        try {
+            BazelOptionNormalizer.normalize("test", Collections.emptyList(), Collections.singletonList("--test_env=CI=1"));
+            fail("Should have failed");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage().startsWith("The option '--test_env=CI=1' of `bazel test` changes the build configuration"),
+                    IsEqual.equalTo(true));
+        }
+    }
+
+    @Test
+    public void testNotConfiguredCommandsAreNotChanged() {
+        assertThat(BazelOptionNormalizer.normalize("clean", Collections.singletonList("--define=flavor=free"),
+                Collections.singletonList("--expunge")),
+                IsEqual.equalTo(Collections.singletonList("--expunge")));
+    }
+
+    @Test
+    public void testConfigurationOptions() {
+        assertThat(BazelOptionNormalizer.isConfigurationOption("--define=a=b"), IsEqual.equalTo(true));
+        assertThat(BazelOptionNormalizer.isConfigurationOption("--nostamp"), IsEqual.equalTo(true));
+        assertThat(BazelOptionNormalizer.isConfigurationOption("--keep_going"), IsEqual.equalTo(false));
+        assertThat(BazelOptionNormalizer.isConfigurationOption("//lib:jar"), IsEqual.equalTo(false));
+    }
+}
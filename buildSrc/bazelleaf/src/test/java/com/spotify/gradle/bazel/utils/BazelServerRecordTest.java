@@ -0,0 +1,51 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BazelServerRecordTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testRecordRoundTrip() throws Exception {
+        final File recordFile = BazelServerRecord.getRecordFile(temporaryFolder.getRoot());
+        assertThat(BazelServerRecord.read(recordFile), IsNull.nullValue());
+
+        final BazelServerRecord record = BazelServerRecord.observe(recordFile, null, "1234",
+                Arrays.asList("--output_user_root=/tmp/root", "--host_jvm_args=-Xmx4g"));
+        final BazelServerRecord read = BazelServerRecord.read(recordFile);
+
+        assertThat(read.pid, IsEqual.equalTo("1234"));
+        assertThat(read.startupOptions, IsEqual.equalTo(Arrays.asList("--output_user_root=/tmp/root", "--host_jvm_args=-Xmx4g")));
+        assertThat(read.firstSeenMillis, IsEqual.equalTo(record.firstSeenMillis));
+    }
+
+    @Test
+    public void testSameServerKeepsItsFirstSeenTime() {
+        final File recordFile = BazelServerRecord.getRecordFile(temporaryFolder.getRoot());
+        final BazelServerRecord previous = new BazelServerRecord("1234", Collections.emptyList(), 1000L);
+
+        assertThat(BazelServerRecord.observe(recordFile, previous, "1234", Collections.emptyList()).firstSeenMillis, IsEqual.equalTo(1000L));
+        assertThat(BazelServerRecord.observe(recordFile, previous, "5678", Collections.emptyList()).firstSeenMillis == 1000L, IsEqual.equalTo(false));
+    }
+
+    @Test
+    public void testUptime() {
+        final BazelServerRecord record = new BazelServerRecord("1234", Collections.emptyList(),
+                System.currentTimeMillis() - ((3600 + 5 * 60 + 12) * 1000L));
+
+        assertThat(record.getUptime(), IsEqual.equalTo("1h 05m 12s"));
+    }
+}
@@ -0,0 +1,36 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.junit.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class BazelServerWatcherTest {
+
+    @Test
+    public void testReportsKilledServer() {
+        final Logger logger = mock(Logger.class);
+        final BazelServerWatcher watcher = new BazelServerWatcher(logger);
+
+        watcher.accept("WARNING: Running Bazel server needs to be killed, because the startup options are different.");
+
+        verify(logger).warn("The Bazel server was restarted, because {}. Something else (a terminal, or the IDE) is using this "
+                + "workspace with other startup options than the build's.", "the startup options are different");
+    }
+
+    @Test
+    public void testIgnoresOtherLines() {
+        final Logger logger = mock(Logger.class);
+        final BazelServerWatcher watcher = new BazelServerWatcher(logger);
+
+        watcher.accept("INFO: Analysed target //lib2:jar (0 packages loaded).");
+        watcher.accept("WARNING: some other warning.");
+
+        verify(logger, never()).warn(anyString(), any(Object.class));
+    }
+}
@@ -0,0 +1,75 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.hamcrest.core.IsEqual;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class ConsoleForwarderTest {
+
+    @Test
+    public void testForwardsAllLinesInOrder() throws Exception {
+        final Logger logger = mock(Logger.class);
+        final List<String> lines = new ArrayList<>();
+        try (ConsoleForwarder consoleForwarder = new ConsoleForwarder(logger)) {
+            for (int i = 0; i < 2000; i++) {
+                lines.add("line " + i);
+                consoleForwarder.accept("line " + i);
+            }
+        }
+
+        final ArgumentCaptor<String> messages = ArgumentCaptor.forClass(String.class);
+        verify(logger, atLeastOnce()).lifecycle(messages.capture());
+        final List<String> forwardedLines = new ArrayList<>();
+        messages.getAllValues().forEach(message -> forwardedLines.addAll(Arrays.asList(message.split("\n"))));
+        assertThat(forwardedLines, IsEqual.equalTo(lines));
+    }
+
+    @Test
+    public void testNeverDropsErrorLines() throws Exception {
+        final Logger logger = mock(Logger.class);
+        final CountDownLatch consoleBlocked = new CountDownLatch(1);
+        final List<String> forwardedLines = Collections.synchronizedList(new ArrayList<>());
+        doAnswer(invocation -> {
+            consoleBlocked.await();
+            forwardedLines.addAll(Arrays.asList(invocation.<String>getArgument(0).split("\n")));
+            return null;
+        }).when(logger).lifecycle(anyString());
+
+        final ConsoleForwarder consoleForwarder = new ConsoleForwarder(logger);
+        //more lines than the queue can hold, while the console is stuck.
+        for (int i = 0; i < 20_000; i++) {
+            consoleForwarder.accept("line " + i);
+        }
+        final Thread errorWriter = new Thread(() -> consoleForwarder.accept("ERROR: the build failed"));
+        errorWriter.start();
+        consoleBlocked.countDown();
+        errorWriter.join();
+        consoleForwarder.close();
+
+        assertThat(forwardedLines.contains("ERROR: the build failed"), IsEqual.equalTo(true));
+    }
+
+    @Test
+    public void testDoesNotWriteWithoutOutput() throws Exception {
+        final Logger logger = mock(Logger.class);
+        new ConsoleForwarder(logger).close();
+
+        verify(logger, never()).lifecycle(anyString());
+    }
+}
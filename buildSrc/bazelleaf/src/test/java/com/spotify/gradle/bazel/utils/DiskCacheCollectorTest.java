@@ -0,0 +1,65 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsEqual;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class DiskCacheCollectorTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testEvictsLeastRecentlyUsedEntries() throws Exception {
+        final File cacheFolder = temporaryFolder.newFolder("disk-cache");
+        final File oldest = createEntry(cacheFolder, "cas/aa", 1000, 1_000_000L);
+        final File older = createEntry(cacheFolder, "ac/bb", 1000, 2_000_000L);
+        final File newest = createEntry(cacheFolder, "cas/cc", 1000, 3_000_000L);
+
+        final DiskCacheCollector.Result result = new DiskCacheCollector(cacheFolder, 1500).collect();
+
+        assertThat(oldest.exists(), Is.is(false));
+        assertThat(older.exists(), Is.is(false));
+        assertThat(newest.exists(), Is.is(true));
+        assertThat(result.evictedFiles, IsEqual.equalTo(2));
+        assertThat(result.evictedBytes, IsEqual.equalTo(2000L));
+        assertThat(result.remainingBytes, IsEqual.equalTo(1000L));
+    }
+
+    @Test
+    public void testDoesNotEvictWhenUnderMaxSize() throws Exception {
+        final File cacheFolder = temporaryFolder.newFolder("disk-cache");
+        final File entry = createEntry(cacheFolder, "cas/aa", 1000, 1_000_000L);
+
+        final DiskCacheCollector.Result result = new DiskCacheCollector(cacheFolder, 1000).collect();
+
+        assertThat(entry.exists(), Is.is(true));
+        assertThat(result.evictedFiles, IsEqual.equalTo(0));
+        assertThat(result.remainingBytes, IsEqual.equalTo(1000L));
+    }
+
+    @Test
+    public void testMissingCacheFolder() throws Exception {
+        final DiskCacheCollector.Result result = new DiskCacheCollector(new File(temporaryFolder.getRoot(), "nothing"), 1000).collect();
+
+        assertThat(result.evictedFiles, IsEqual.equalTo(0));
+    }
+
+    private static File createEntry(File cacheFolder, String name, int size, long lastUsed) throws Exception {
+        final File entry = new File(cacheFolder, name);
+        FileUtils.writeByteArrayToFile(entry, new byte[size]);
+        Files.setAttribute(entry.toPath(), "lastAccessTime", FileTime.fromMillis(lastUsed));
+        Files.setLastModifiedTime(entry.toPath(), FileTime.fromMillis(lastUsed));
+        return entry;
+    }
+}
@@ -0,0 +1,36 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.logging.Logger;
+import org.hamcrest.core.IsEqual;
+import org.junit.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class DiskCacheStatsTest {
+
+    @Test
+    public void testCountsCacheHits() {
+        final Logger logger = mock(Logger.class);
+        final DiskCacheStats stats = new DiskCacheStats(logger);
+        stats.accept("INFO: Analysed target //lib2:jar (0 packages loaded).");
+        assertThat(stats.getProcesses(), IsEqual.equalTo(-1));
+
+        stats.accept("INFO: 7 processes: 2 remote cache hit, 5 linux-sandbox.");
+
+        assertThat(stats.getProcesses(), IsEqual.equalTo(7));
+        assertThat(stats.getCacheHits(), IsEqual.equalTo(2));
+        verify(logger).lifecycle("Bazel disk cache: {} of {} processes were cache hits.", 2, 7);
+    }
+
+    @Test
+    public void testSummaryWithoutCacheHits() {
+        final DiskCacheStats stats = new DiskCacheStats(mock(Logger.class));
+        stats.accept("INFO: 1 process: 1 internal.");
+
+        assertThat(stats.getProcesses(), IsEqual.equalTo(1));
+        assertThat(stats.getCacheHits(), IsEqual.equalTo(0));
+    }
+}
@@ -0,0 +1,76 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsEqual;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class ProcessOutputTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static ByteArrayInputStream createOutput(int lines) {
+        final StringBuilder output = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            output.append("line ").append(i).append(i % 2 == 0 ? "\n" : "\r\n");
+        }
+        return new ByteArrayInputStream(output.toString().getBytes(Charset.defaultCharset()));
+    }
+
+    @Test
+    public void testDispatchesAllLines() throws Exception {
+        final List<String> lines = new ArrayList<>();
+        final ProcessOutput processOutput = new ProcessOutput(Collections.singletonList(lines::add), 10);
+
+        processOutput.pump(createOutput(100));
+
+        assertThat(lines.size(), IsEqual.equalTo(100));
+        assertThat(lines.get(0), IsEqual.equalTo("line 0"));
+        assertThat(lines.get(99), IsEqual.equalTo("line 99"));
+    }
+
+    @Test
+    public void testKeepsOnlyTail() throws Exception {
+        final ProcessOutput processOutput = new ProcessOutput(Collections.emptyList(), 3);
+
+        processOutput.pump(createOutput(100));
+
+        assertThat(processOutput.getTail(), Matchers.contains("line 97", "line 98", "line 99"));
+    }
+
+    @Test
+    public void testPumpsInBackground() throws Exception {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<>());
+        final ProcessOutput processOutput = new ProcessOutput(Collections.singletonList(lines::add), 10);
+
+        processOutput.pumpInBackground(createOutput(100), "stdout").get();
+
+        assertThat(lines.size(), IsEqual.equalTo(100));
+    }
+
+    @Test
+    public void testSpillsFullOutputToLogFile() throws Exception {
+        final File logFile = new File(temporaryFolder.getRoot(), "logs/bazel.log");
+        try (LogFileWriter logFileWriter = new LogFileWriter(logFile)) {
+            new ProcessOutput(Collections.singletonList(logFileWriter), 3).pump(createOutput(100));
+        }
+
+        final List<String> loggedLines = FileUtils.readLines(logFile, StandardCharsets.UTF_8);
+        assertThat(loggedLines.size(), IsEqual.equalTo(100));
+        assertThat(loggedLines.get(50), IsEqual.equalTo("line 50"));
+    }
+}
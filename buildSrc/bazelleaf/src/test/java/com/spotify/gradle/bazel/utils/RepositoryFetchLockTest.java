@@ -0,0 +1,41 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.hamcrest.core.Is;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@SuppressWarnings("PMD.AlwaysSpecifyTestRunner")
+public class RepositoryFetchLockTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testSecondFetchWaitsForTheFirst() throws Exception {
+        final File repositoryCache = new File(temporaryFolder.getRoot(), "repository-cache");
+        final RepositoryFetchLock.Held first = new RepositoryFetchLock(repositoryCache).acquire();
+        assertThat(new File(repositoryCache, RepositoryFetchLock.LOCK_FILE_NAME).isFile(), Is.is(true));
+
+        final CompletableFuture<RepositoryFetchLock.Held> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new RepositoryFetchLock(repositoryCache).acquire();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(second.isDone(), Is.is(false));
+
+        first.close();
+        //releasing twice is allowed, and does not release someone else's lock.
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+    }
+}
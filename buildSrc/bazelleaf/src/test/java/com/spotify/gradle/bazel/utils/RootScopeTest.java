@@ -0,0 +1,88 @@
+package com.spotify.gradle.bazel.utils;
+
+import org.gradle.api.Project;
+import org.gradle.testfixtures.ProjectBuilder;
+import org.hamcrest.core.Is;
+import org.hamcrest.core.IsEqual;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings({"PMD.AlwaysSpecifyTestRunner", "PMD.UseAssertThatThrowingInstead"})
+public class RootScopeTest {
+
+    @Test
+    public void testSharesOneInstancePerBuild() {
+        final Project rootProject = ProjectBuilder.builder().build();
+        final Project module = ProjectBuilder.builder().withParent(rootProject).build();
+
+        final StringBuilder instance = RootScope.get(rootProject, StringBuilder.class, StringBuilder::new);
+
+        assertThat(RootScope.get(module, StringBuilder.class, StringBuilder::new), Is.is(instance));
+        assertThat(RootScope.get(ProjectBuilder.builder().build(), StringBuilder.class, StringBuilder::new) == instance, Is.is(false));
+    }
+
+    @Test
+    public void testOtherThreadsWaitForTheInstanceBeingCreated() throws Exception {
+        final Project project = ProjectBuilder.builder().build();
+        final CountDownLatch factoryStarted = new CountDownLatch(1);
+        final CountDownLatch factoryMayFinish = new CountDownLatch(1);
+        final AtomicInteger creations = new AtomicInteger();
+
+        final CompletableFuture<StringBuilder> first = CompletableFuture.supplyAsync(() -> RootScope.get(project, StringBuilder.class, () -> {
+            factoryStarted.countDown();
+            try {
+                factoryMayFinish.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            creations.incrementAndGet();
+            return new StringBuilder();
+        }));
+        factoryStarted.await();
+        //not blocked by the running factory, since it is of another type.
+        assertThat(RootScope.get(project, Integer.class, () -> 1), IsEqual.equalTo(1));
+        final CompletableFuture<StringBuilder> second = CompletableFuture.supplyAsync(() -> RootScope.get(project, StringBuilder.class, () -> {
+            creations.incrementAndGet();
+            return new StringBuilder();
+        }));
+        factoryMayFinish.countDown();
+
+        assertThat(second.get(5, TimeUnit.SECONDS), Is.is(first.get(5, TimeUnit.SECONDS)));
+        assertThat(creations.get(), IsEqual.equalTo(1));
+    }
+
+    @Test
+    public void testFactoryAskingForItselfFails() {
+        final Project project = ProjectBuilder.builder().build();
+
+        try {
+            RootScope.get(project, StringBuilder.class, () -> RootScope.get(project, StringBuilder.class, StringBuilder::new));
+            fail("Should have thrown an exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), IsEqual.equalTo("The factory of java.lang.StringBuilder asked for the instance it is creating."));
+        }
+    }
+
+    @Test
+    public void testFailedFactoryIsRetried() {
+        final Project project = ProjectBuilder.builder().build();
+
+        try {
+            RootScope.get(project, StringBuilder.class, () -> {
+                throw new IllegalStateException("bazel is not there");
+            });
+            fail("Should have thrown an exception");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), IsEqual.equalTo("bazel is not there"));
+        }
+
+        assertThat(RootScope.get(project, StringBuilder.class, () -> new StringBuilder("second")).toString(), IsEqual.equalTo("second"));
+    }
+}